@@ -0,0 +1,200 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks pixels drawn by every renderer: insides and edges of backgrounds are filled, corners are
+ * rounded or square depending on renderer and text parts that wrap.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BackgroundRenderersTest {
+
+    private static final int COLOR = 0xFFFF0000;
+    private static final int TRANSPARENT = 0;
+    private static final float RADIUS = 10;
+    private static final int TOP = 10;
+    private static final int BOTTOM = 50;
+
+    /**
+     * Background of a whole text part.
+     */
+    private static final int PART_LEFT = 10;
+    private static final int PART_RIGHT = 110;
+
+    /**
+     * Background of a text part that continues on next line.
+     */
+    private static final int WRAPPED_LEFT = 130;
+    private static final int WRAPPED_RIGHT = 230;
+
+    /**
+     * Background narrower than two radii.
+     */
+    private static final int NARROW_LEFT = 250;
+    private static final int NARROW_RIGHT = 265;
+
+    /**
+     * Transparent background.
+     */
+    private static final int TRANSPARENT_LEFT = 280;
+    private static final int TRANSPARENT_RIGHT = 320;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mBitmap = Bitmap.createBitmap(340, 60, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    @Test
+    public void roundRectRenderer() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT, RADIUS);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, TRANSPARENT, TRANSPARENT);
+        assertCorners(WRAPPED_LEFT, WRAPPED_RIGHT, TRANSPARENT, TRANSPARENT);
+        assertCorners(NARROW_LEFT, NARROW_RIGHT, TRANSPARENT, TRANSPARENT);
+    }
+
+    @Test
+    public void rectRenderer() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_RECT, RADIUS);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, COLOR, COLOR);
+        assertCorners(WRAPPED_LEFT, WRAPPED_RIGHT, COLOR, COLOR);
+        assertCorners(NARROW_LEFT, NARROW_RIGHT, COLOR, COLOR);
+    }
+
+    @Test
+    public void pathsRenderer() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_PATHS, RADIUS);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, TRANSPARENT, TRANSPARENT);
+        assertCorners(WRAPPED_LEFT, WRAPPED_RIGHT, TRANSPARENT, TRANSPARENT);
+        assertCorners(NARROW_LEFT, NARROW_RIGHT, TRANSPARENT, TRANSPARENT);
+    }
+
+    @Test
+    public void cornerBitmapRenderer() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP, RADIUS);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, TRANSPARENT, TRANSPARENT);
+        assertCorners(WRAPPED_LEFT, WRAPPED_RIGHT, TRANSPARENT, TRANSPARENT);
+        // drawn as rounded rectangle
+        assertCorners(NARROW_LEFT, NARROW_RIGHT, TRANSPARENT, TRANSPARENT);
+    }
+
+    @Test
+    public void cornerBitmapRendererWithoutRadius() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP, 0);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, COLOR, COLOR);
+    }
+
+    @Test
+    public void outlineRenderer() {
+        draw(RoundedCornersBackgroundSpan.RENDERER_OUTLINE, RADIUS);
+        assertFilled();
+        assertCorners(PART_LEFT, PART_RIGHT, TRANSPARENT, TRANSPARENT);
+        // part continues on next line, so its right corners are square
+        assertCorners(WRAPPED_LEFT, WRAPPED_RIGHT, TRANSPARENT, COLOR);
+        assertCorners(NARROW_LEFT, NARROW_RIGHT, TRANSPARENT, TRANSPARENT);
+    }
+
+    @Test
+    public void cornerBitmapRendererCachesCornersByColorAndRadius() {
+        final BackgroundRenderer renderer = BackgroundRenderers.get(RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP);
+        final RectF rectangle = new RectF();
+        // more colors and radii than cache can hold
+        for (int i = 0; i < 40; i++) {
+            final int color = 0xFF000000 | i * 0x060402;
+            final float radius = i % 2 == 0 ? RADIUS : RADIUS * 2;
+            final LineGeometry lineGeometry = newLineGeometry(color, false);
+            mBitmap.eraseColor(TRANSPARENT);
+            renderer.prepare(lineGeometry, radius, rectangle);
+            renderer.draw(mCanvas, lineGeometry, radius, rectangle);
+            // inside of top left corner
+            assertEquals("color " + i, color, mBitmap.getPixel(PART_LEFT + 7, TOP + 7));
+            assertEquals("color " + i, TRANSPARENT, mBitmap.getPixel(PART_LEFT, TOP));
+        }
+        assertEquals(16, ((CornerBitmapRenderer) renderer).getCachedCornersCount());
+    }
+
+    private void draw(int rendererType, float radius) {
+        final BackgroundRenderer renderer = BackgroundRenderers.get(rendererType);
+        final LineGeometry lineGeometry = newLineGeometry(COLOR, true);
+        final RectF rectangle = new RectF();
+        renderer.prepare(lineGeometry, radius, rectangle);
+        renderer.draw(mCanvas, lineGeometry, radius, rectangle);
+    }
+
+    /**
+     * Create geometry of LTR line with backgrounds of whole, wrapped, narrow and optionally
+     * transparent parts.
+     */
+    private static LineGeometry newLineGeometry(int color, boolean addTransparent) {
+        final LineGeometry lineGeometry = new LineGeometry();
+        final LineRects rects = lineGeometry.getRects();
+        rects.clear(TOP, BOTTOM, false);
+        final int both = LineRects.ROUNDED_LEFT | LineRects.ROUNDED_RIGHT;
+        rects.add(color, 0, PART_RIGHT - PART_LEFT, both);
+        rects.setRect(0, PART_LEFT, TOP, PART_RIGHT, BOTTOM);
+        rects.add(color, 10, WRAPPED_RIGHT - WRAPPED_LEFT, LineRects.ROUNDED_LEFT);
+        rects.setRect(1, WRAPPED_LEFT, TOP, WRAPPED_RIGHT, BOTTOM);
+        rects.add(color, 20, NARROW_RIGHT - NARROW_LEFT, both);
+        rects.setRect(2, NARROW_LEFT, TOP, NARROW_RIGHT, BOTTOM);
+        if (addTransparent) {
+            rects.add(TRANSPARENT, 30, TRANSPARENT_RIGHT - TRANSPARENT_LEFT, both);
+            rects.setRect(3, TRANSPARENT_LEFT, TOP, TRANSPARENT_RIGHT, BOTTOM);
+        }
+        return lineGeometry;
+    }
+
+    /**
+     * Check that insides and edges of backgrounds are filled and transparent background isn't drawn.
+     */
+    private void assertFilled() {
+        for (int[] bounds : new int[][]{{PART_LEFT, PART_RIGHT}, {WRAPPED_LEFT, WRAPPED_RIGHT},
+                {NARROW_LEFT, NARROW_RIGHT}}) {
+            final int centerX = (bounds[0] + bounds[1]) / 2;
+            final int centerY = (TOP + BOTTOM) / 2;
+            assertEquals(COLOR, mBitmap.getPixel(centerX, centerY));
+            assertEquals(COLOR, mBitmap.getPixel(bounds[0], centerY));
+            assertEquals(COLOR, mBitmap.getPixel(bounds[1] - 1, centerY));
+            if (bounds[1] - bounds[0] > 4 * RADIUS) {
+                // radius of narrow background is reduced, so its top and bottom edges are round
+                assertEquals(COLOR, mBitmap.getPixel(centerX, TOP));
+                assertEquals(COLOR, mBitmap.getPixel(centerX, BOTTOM - 1));
+            }
+        }
+        assertEquals(TRANSPARENT, mBitmap.getPixel((TRANSPARENT_LEFT + TRANSPARENT_RIGHT) / 2, (TOP + BOTTOM) / 2));
+        // nothing is drawn between backgrounds
+        assertEquals(TRANSPARENT, mBitmap.getPixel(PART_RIGHT + 5, (TOP + BOTTOM) / 2));
+    }
+
+    /**
+     * Check colors of corner pixels of background.
+     */
+    private void assertCorners(int left, int right, int leftColor, int rightColor) {
+        assertEquals(leftColor, mBitmap.getPixel(left, TOP));
+        assertEquals(leftColor, mBitmap.getPixel(left, BOTTOM - 1));
+        assertEquals(rightColor, mBitmap.getPixel(right - 1, TOP));
+        assertEquals(rightColor, mBitmap.getPixel(right - 1, BOTTOM - 1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.Spanned;
+import android.text.StaticLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that drawing of unchanged layout doesn't allocate once backgrounds of its lines have been
+ * calculated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+
+    private static final int PARTS_COUNT = 200;
+    private static final int SEGMENTS_PER_LINE = 4;
+    private static final int[] RENDERER_TYPES = {RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT,
+            RoundedCornersBackgroundSpan.RENDERER_RECT, RoundedCornersBackgroundSpan.RENDERER_PATHS,
+            RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP, RoundedCornersBackgroundSpan.RENDERER_OUTLINE};
+    private static final int[] ALIGNMENTS = {RoundedCornersBackgroundSpan.ALIGN_START,
+            RoundedCornersBackgroundSpan.ALIGN_CENTER, RoundedCornersBackgroundSpan.ALIGN_END};
+
+    @Test
+    public void redrawDoesNotAllocate() {
+        for (int rendererType : RENDERER_TYPES) {
+            for (int alignment : ALIGNMENTS) {
+                for (int rtl = 0; rtl <= 1; rtl++) {
+                    assertRedrawDoesNotAllocate(SpanBenchmark.newBuilder(alignment, rendererType), rtl == 1,
+                            "renderer " + rendererType + ", alignment " + alignment + ", rtl " + (rtl == 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void redrawOfRecordedPicturesDoesNotAllocate() {
+        for (int rtl = 0; rtl <= 1; rtl++) {
+            assertRedrawDoesNotAllocate(SpanBenchmark.newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                    RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT).setPictureCacheSize(1024 * 1024), rtl == 1,
+                    "pictures, rtl " + (rtl == 1));
+        }
+    }
+
+    private static void assertRedrawDoesNotAllocate(RoundedCornersBackgroundSpan.Builder builder, boolean rtl,
+                                                    String message) {
+        final SpanBenchmark.LinesDrawer drawer = new SpanBenchmark.LinesDrawer(builder, PARTS_COUNT,
+                SEGMENTS_PER_LINE, rtl);
+        final StaticLayout layout = drawer.getLayout();
+        final Spanned text = (Spanned) layout.getText();
+        final SpacingSpan[] separators = text.getSpans(0, text.length(), SpacingSpan.class);
+        final Paint paint = layout.getPaint();
+        final Canvas canvas = new Canvas();
+        // first draw calculates backgrounds of lines
+        drawer.run();
+        drawSeparators(canvas, paint, text, separators);
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            drawer.run();
+            drawSeparators(canvas, paint, text, separators);
+            assertEquals(message, 0, Debug.getThreadAllocCount());
+        } finally {
+            Debug.stopAllocCounting();
+            drawer.recycle();
+        }
+    }
+
+    /**
+     * Measure and draw separators the same way as layout does.
+     */
+    private static void drawSeparators(Canvas canvas, Paint paint, Spanned text, SpacingSpan[] separators) {
+        for (SpacingSpan separator : separators) {
+            final int start = text.getSpanStart(separator);
+            final int end = text.getSpanEnd(separator);
+            final int width = separator.getSize(paint, text, start, end, null);
+            separator.draw(canvas, text, start, end, width, 0, 0, 0, paint);
+        }
+    }
+}
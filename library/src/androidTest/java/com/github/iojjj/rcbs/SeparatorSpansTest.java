@@ -0,0 +1,169 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.LineBackgroundSpan;
+import android.text.style.ReplacementSpan;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks number of spans and memory allocated by built text and compares them with text built
+ * with separators of previous implementation, which were drawn on every line.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SeparatorSpansTest {
+
+    private static final String TAG = "SeparatorSpansTest";
+    private static final int PARTS_COUNT = 2000;
+
+    /**
+     * Maximum number of bytes allocated per text part by {@code build()}: text characters, span
+     * tables of text, separator span and positions of part.
+     */
+    private static final int MAX_BYTES_PER_PART = 256;
+
+    @Test
+    public void separatorsAreOnlySpansBesideBackgroundSpan() {
+        final Spannable text = newBuilder().build();
+        final int length = text.length();
+        assertEquals(PARTS_COUNT - 1, text.getSpans(0, length, SpacingSpan.class).length);
+        assertEquals(1, text.getSpans(0, length, RoundedCornersBackgroundSpan.class).length);
+        // separators are not drawn on every line
+        assertEquals(1, text.getSpans(0, length, LineBackgroundSpan.class).length);
+        assertEquals(PARTS_COUNT, text.getSpans(0, length, Object.class).length);
+        final Spanned legacyText = new LegacyBuilder(text).build();
+        assertEquals(PARTS_COUNT, legacyText.getSpans(0, length, LineBackgroundSpan.class).length);
+        assertEquals(PARTS_COUNT, legacyText.getSpans(0, length, Object.class).length);
+    }
+
+    @Test
+    public void buildAllocatesLessMemoryPerPartThanLegacySeparators() {
+        final RoundedCornersBackgroundSpan.Builder builder = newBuilder();
+        // warm up, so class loading isn't counted
+        final LegacyBuilder legacyBuilder = new LegacyBuilder(builder.build());
+        legacyBuilder.build();
+        final int allocatedSize = getAllocatedSize(new Runnable() {
+            @Override
+            public void run() {
+                builder.build();
+            }
+        });
+        final int legacyAllocatedSize = getAllocatedSize(new Runnable() {
+            @Override
+            public void run() {
+                legacyBuilder.build();
+            }
+        });
+        final int bytesPerPart = allocatedSize / PARTS_COUNT;
+        final int legacyBytesPerPart = legacyAllocatedSize / PARTS_COUNT;
+        Log.i(TAG, "Allocated " + bytesPerPart + " bytes per part, legacy separators " + legacyBytesPerPart
+                + " bytes per part");
+        assertTrue("Allocated " + bytesPerPart + " bytes per part", bytesPerPart <= MAX_BYTES_PER_PART);
+        assertTrue("Allocated " + bytesPerPart + " bytes per part, legacy separators " + legacyBytesPerPart,
+                bytesPerPart < legacyBytesPerPart);
+    }
+
+    private static RoundedCornersBackgroundSpan.Builder newBuilder() {
+        return SpanBenchmark.newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT)
+                .addTextParts(SpanBenchmark.newParts(false, PARTS_COUNT), SpanBenchmark.newColors(PARTS_COUNT));
+    }
+
+    /**
+     * Get number of bytes allocated by operation on current thread.
+     */
+    private static int getAllocatedSize(Runnable operation) {
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocSize();
+            operation.run();
+            return Debug.getThreadAllocSize();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /**
+     * Builds the same text the way previous implementation did: every separator gets its own span
+     * with table of lines.
+     */
+    private static final class LegacyBuilder {
+
+        private final String mChars;
+        private final int[] mSeparatorStarts;
+        private final RoundedCornersBackgroundSpan mSpan;
+
+        LegacyBuilder(Spanned text) {
+            mChars = text.toString();
+            mSpan = text.getSpans(0, text.length(), RoundedCornersBackgroundSpan.class)[0];
+            final SpacingSpan[] separators = text.getSpans(0, text.length(), SpacingSpan.class);
+            mSeparatorStarts = new int[separators.length];
+            for (int i = 0; i < separators.length; i++) {
+                mSeparatorStarts[i] = text.getSpanStart(separators[i]);
+            }
+        }
+
+        Spanned build() {
+            final SpannableStringBuilder builder = new SpannableStringBuilder(mChars);
+            final float separatorWidth = mSpan.getStyle().getSeparatorWidth();
+            for (int separatorStart : mSeparatorStarts) {
+                builder.setSpan(new LegacySpacingSpan(separatorWidth), separatorStart, separatorStart + 1,
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            builder.setSpan(mSpan, 0, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            return builder;
+        }
+    }
+
+    /**
+     * Separator of previous implementation. It's drawn on every line to collect line bounds that
+     * are used to measure it.
+     */
+    private static final class LegacySpacingSpan extends ReplacementSpan implements LineBackgroundSpan {
+
+        private final float mSeparatorWidth;
+        private final SparseIntArray mLineCoordinates = new SparseIntArray();
+        private int mLineCounter;
+        private int mSizeCounter;
+
+        LegacySpacingSpan(float separatorWidth) {
+            mSeparatorWidth = separatorWidth;
+        }
+
+        @Override
+        public int getSize(Paint paint, CharSequence text, int start, int end, Paint.FontMetricsInt fm) {
+            mLineCounter = 0;
+            final int coordinates = mLineCoordinates.get(mSizeCounter);
+            if ((coordinates & 0xFFFF) == start || (coordinates >> 16 & 0xFFFF) == end) {
+                return 0;
+            }
+            return (int) mSeparatorWidth;
+        }
+
+        @Override
+        public void draw(Canvas canvas, CharSequence text, int start, int end, float x, int top, int y,
+                         int bottom, Paint paint) {
+            mSizeCounter++;
+        }
+
+        @Override
+        public void drawBackground(Canvas c, Paint p, int left, int right, int top, int baseline, int bottom,
+                                   CharSequence text, int start, int end, int lnum) {
+            mSizeCounter = 0;
+            mLineCoordinates.put(mLineCounter, start | end << 16);
+            mLineCounter++;
+        }
+    }
+}
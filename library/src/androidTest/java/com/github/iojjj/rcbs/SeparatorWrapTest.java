@@ -0,0 +1,71 @@
+package com.github.iojjj.rcbs;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that backgrounds follow text of lines wrapped at boundaries of parts. Depending on API
+ * level, layout wraps line either after separator or right before it, so line might start with
+ * separator that keeps its width.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SeparatorWrapTest {
+
+    private static final int PARTS_COUNT = 12;
+    private static final float DELTA = 1;
+
+    @Test
+    public void backgroundsOfLtrLinesFollowText() {
+        assertBackgroundsFollowText(false);
+    }
+
+    @Test
+    public void backgroundsOfRtlLinesFollowText() {
+        assertBackgroundsFollowText(true);
+    }
+
+    private static void assertBackgroundsFollowText(boolean rtl) {
+        final Spanned text = SpanBenchmark.newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT)
+                .addTextParts(SpanBenchmark.newParts(rtl, PARTS_COUNT), SpanBenchmark.newColors(PARTS_COUNT))
+                .build();
+        final RoundedCornersBackgroundSpan span = text.getSpans(0, text.length(),
+                RoundedCornersBackgroundSpan.class)[0];
+        final TextPaint paint = SpanBenchmark.newPaint();
+        final int minWidth = (int) Math.ceil(paint.measureText(SpanBenchmark.newParts(rtl, 1)[0].toString()));
+        final int maxWidth = SpanBenchmark.getLineWidth(paint, rtl, 2);
+        int wrappedLines = 0;
+        // every width between one and two parts, so lines are wrapped exactly at every boundary of parts
+        for (int width = minWidth; width <= maxWidth; width++) {
+            final StaticLayout layout = SpanBenchmark.newLayout(text, paint, width);
+            final LineGeometryCalculator calculator = new LineGeometryCalculator();
+            for (int line = 0; line < layout.getLineCount(); line++) {
+                final int lineStart = layout.getLineStart(line);
+                final LineGeometry lineGeometry = new LineGeometry();
+                calculator.calculate(span.getGeometrySpec(), lineGeometry, paint, 0, width, layout.getLineTop(line),
+                        layout.getLineBaseline(line), text, lineStart, layout.getLineEnd(line),
+                        span.getGeneration());
+                final LineRects rects = lineGeometry.getRects();
+                final float padding = rects.getPadding();
+                for (int i = 0; i < rects.size(); i++) {
+                    // start of text part is on the right side of RTL line
+                    final float expected = layout.getPrimaryHorizontal(lineStart + rects.getOffset(i));
+                    final float actual = rtl ? rects.getRight(i) - padding : rects.getLeft(i) + padding;
+                    assertEquals("width " + width + ", line " + line, expected, actual, DELTA);
+                }
+                if (line > 0) {
+                    wrappedLines++;
+                }
+            }
+        }
+        assertTrue(wrappedLines > 0);
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.iojjj.rcbs;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.Layout;
+import android.text.Spannable;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * On-device benchmarks of building text, creating layout with the span attached and drawing
+ * backgrounds per line with every renderer. Skipped unless run with {@code -e benchmark true}, results are written to
+ * {@code benchmarks/SpanBenchmark.json} in external files directory of test application.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SpanBenchmark {
+
+    private static final int[] PARTS_COUNTS = {100, 1000, 10000};
+    private static final int[] SEGMENTS_PER_LINE = {1, 4, 16};
+    private static final int[] ALIGNMENTS = {RoundedCornersBackgroundSpan.ALIGN_START,
+            RoundedCornersBackgroundSpan.ALIGN_CENTER, RoundedCornersBackgroundSpan.ALIGN_END};
+    private static final String[] ALIGNMENT_NAMES = {"start", "center", "end"};
+    private static final int[] RENDERER_TYPES = {RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT,
+            RoundedCornersBackgroundSpan.RENDERER_RECT, RoundedCornersBackgroundSpan.RENDERER_PATHS,
+            RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP, RoundedCornersBackgroundSpan.RENDERER_OUTLINE};
+    private static final String[] RENDERER_NAMES = {"roundRect", "rect", "paths", "cornerBitmap", "outline"};
+    private static final String LTR_PART = "tag";
+    private static final String RTL_PART = "תגית";
+    private static final float TEXT_SIZE = 32;
+    private static final float PADDING = 6;
+    private static final float SPACING = 8;
+    private static final float RADIUS = 10;
+    private static final int CANVAS_HEIGHT = 256;
+
+    private static BenchmarkReport sReport;
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue("Benchmarks are disabled",
+                Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString("benchmark")));
+        sContext = InstrumentationRegistry.getTargetContext();
+        sReport = new BenchmarkReport(SpanBenchmark.class.getSimpleName());
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        if (sReport != null) {
+            File directory = sContext.getExternalFilesDir(null);
+            if (directory == null) {
+                directory = sContext.getFilesDir();
+            }
+            sReport.write(new File(directory, "benchmarks"));
+        }
+    }
+
+    @Test
+    public void build() {
+        for (final int partsCount : PARTS_COUNTS) {
+            for (int rtl = 0; rtl <= 1; rtl++) {
+                final RoundedCornersBackgroundSpan.Builder builder = newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                        RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT);
+                final CharSequence[] parts = newParts(rtl == 1, partsCount);
+                final int[] colors = newColors(partsCount);
+                final double nsPerOp = Benchmark.measure(new Runnable() {
+                    @Override
+                    public void run() {
+                        builder.reset().addTextParts(parts, colors).build();
+                    }
+                }, 1);
+                sReport.add("Builder.build", nsPerOp, "parts", partsCount, "rtl", rtl == 1);
+            }
+        }
+    }
+
+    @Test
+    public void createLayout() {
+        for (int partsCount : PARTS_COUNTS) {
+            for (int segmentsPerLine : SEGMENTS_PER_LINE) {
+                for (int rtl = 0; rtl <= 1; rtl++) {
+                    final Spannable text = newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                            RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT)
+                            .addTextParts(newParts(rtl == 1, partsCount), newColors(partsCount))
+                            .build();
+                    final TextPaint paint = newPaint();
+                    final int width = getLineWidth(paint, rtl == 1, segmentsPerLine);
+                    final int[] linesCount = new int[1];
+                    final double nsPerOp = Benchmark.measure(new Runnable() {
+                        @Override
+                        public void run() {
+                            linesCount[0] = newLayout(text, paint, width).getLineCount();
+                        }
+                    }, 1);
+                    sReport.add("StaticLayout.new", nsPerOp,
+                            "parts", partsCount,
+                            "lines", linesCount[0],
+                            "segmentsPerLine", segmentsPerLine,
+                            "rtl", rtl == 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void drawBackground() {
+        for (int partsCount : PARTS_COUNTS) {
+            for (int segmentsPerLine : SEGMENTS_PER_LINE) {
+                for (int rtl = 0; rtl <= 1; rtl++) {
+                    for (int alignment = 0; alignment < ALIGNMENTS.length; alignment++) {
+                        final LinesDrawer drawer = new LinesDrawer(newBuilder(ALIGNMENTS[alignment],
+                                RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT), partsCount, segmentsPerLine, rtl == 1);
+                        final double nsPerLine = Benchmark.measure(drawer, drawer.getLinesCount());
+                        drawer.recycle();
+                        sReport.add("Span.drawBackground", nsPerLine,
+                                "parts", partsCount,
+                                "lines", drawer.getLinesCount(),
+                                "segmentsPerLine", segmentsPerLine,
+                                "rtl", rtl == 1,
+                                "alignment", ALIGNMENT_NAMES[alignment],
+                                "renderer", RENDERER_NAMES[0]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void drawBackgroundWithRenderer() {
+        for (int renderer = 0; renderer < RENDERER_TYPES.length; renderer++) {
+            for (int segmentsPerLine : SEGMENTS_PER_LINE) {
+                final LinesDrawer drawer = new LinesDrawer(newBuilder(RoundedCornersBackgroundSpan.ALIGN_START,
+                        RENDERER_TYPES[renderer]), 1000, segmentsPerLine, false);
+                final double nsPerLine = Benchmark.measure(drawer, drawer.getLinesCount());
+                drawer.recycle();
+                sReport.add("Span.drawBackground", nsPerLine,
+                        "parts", 1000,
+                        "lines", drawer.getLinesCount(),
+                        "segmentsPerLine", segmentsPerLine,
+                        "renderer", RENDERER_NAMES[renderer]);
+            }
+        }
+    }
+
+    static RoundedCornersBackgroundSpan.Builder newBuilder(int alignment, int rendererType) {
+        return new RoundedCornersBackgroundSpan.Builder(InstrumentationRegistry.getTargetContext())
+                .setCornersRadius(RADIUS)
+                .setTextPadding(PADDING)
+                .setPartsSpacing(SPACING)
+                .setTextAlignment(alignment)
+                .setRendererType(rendererType);
+    }
+
+    static CharSequence[] newParts(boolean rtl, int partsCount) {
+        final CharSequence[] parts = new CharSequence[partsCount];
+        Arrays.fill(parts, rtl ? RTL_PART : LTR_PART);
+        return parts;
+    }
+
+    static int[] newColors(int partsCount) {
+        final int[] colors = new int[partsCount];
+        for (int i = 0; i < partsCount; i++) {
+            colors[i] = 0xFF000000 | (i * 0x10101) & 0xFFFFFF;
+        }
+        return colors;
+    }
+
+    static TextPaint newPaint() {
+        final TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(TEXT_SIZE);
+        return paint;
+    }
+
+    /**
+     * Get width of layout that fits specified number of parts on every line.
+     */
+    static int getLineWidth(TextPaint paint, boolean rtl, int segmentsPerLine) {
+        final float partWidth = paint.measureText(rtl ? RTL_PART : LTR_PART) + 2 * PADDING + SPACING;
+        // half of a part more, so rounding errors don't wrap the last part
+        return (int) (partWidth * (segmentsPerLine + 0.5f));
+    }
+
+    static StaticLayout newLayout(CharSequence text, TextPaint paint, int width) {
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
+    }
+
+    /**
+     * Draws backgrounds of every line of layout the same way as layout does, but without text.
+     * Every line is drawn at the top of a small canvas, so lines aren't culled.
+     */
+    static final class LinesDrawer implements Runnable {
+
+        private final StaticLayout mLayout;
+        private final RoundedCornersBackgroundSpan mSpan;
+        private final Bitmap mBitmap;
+        private final Canvas mCanvas;
+
+        LinesDrawer(RoundedCornersBackgroundSpan.Builder builder, int partsCount, int segmentsPerLine, boolean rtl) {
+            final Spannable text = builder
+                    .addTextParts(newParts(rtl, partsCount), newColors(partsCount))
+                    .build();
+            final TextPaint paint = newPaint();
+            mLayout = newLayout(text, paint, getLineWidth(paint, rtl, segmentsPerLine));
+            mSpan = text.getSpans(0, text.length(), RoundedCornersBackgroundSpan.class)[0];
+            mBitmap = Bitmap.createBitmap(mLayout.getWidth(), CANVAS_HEIGHT, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+        }
+
+        int getLinesCount() {
+            return mLayout.getLineCount();
+        }
+
+        StaticLayout getLayout() {
+            return mLayout;
+        }
+
+        /**
+         * Draw backgrounds of specified line.
+         */
+        void drawLine(int line) {
+            final StaticLayout layout = mLayout;
+            final int top = layout.getLineTop(line);
+            final int saveCount = mCanvas.save();
+            mCanvas.translate(0, -top);
+            mSpan.drawBackground(mCanvas, layout.getPaint(), 0, layout.getWidth(), top, layout.getLineBaseline(line),
+                    layout.getLineBottom(line), layout.getText(), layout.getLineStart(line), layout.getLineEnd(line),
+                    line);
+            mCanvas.restoreToCount(saveCount);
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0, count = mLayout.getLineCount(); i < count; i++) {
+                drawLine(i);
+            }
+        }
+
+        void recycle() {
+            mBitmap.recycle();
+        }
+    }
+}
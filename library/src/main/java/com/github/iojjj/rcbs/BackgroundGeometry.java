@@ -0,0 +1,297 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Immutable snapshot of backgrounds computed for text layout. Snapshot can be computed on a
+ * background thread and attached to spans before text is drawn for the first time, so the first
+ * frame only draws backgrounds.
+ * <p>
+ * Layout must be created with the same width and paint metrics as the layout that will draw the
+ * text. For TextView it's a {@link android.text.StaticLayout} created with a copy of TextView's
+ * paint and width of TextView without paddings. Lines that don't match precomputed geometry are
+ * calculated during drawing as usual.
+ */
+public final class BackgroundGeometry {
+
+    private final List<RoundedCornersBackgroundSpan> mSpans;
+    private final List<SparseArray<LineGeometry>> mLinesGeometry;
+    private final int mWidth;
+    private final float mTextSize;
+    private final Typeface mTypeface;
+
+    private BackgroundGeometry(@NonNull List<RoundedCornersBackgroundSpan> spans,
+                               @NonNull List<SparseArray<LineGeometry>> linesGeometry,
+                               int width, float textSize, Typeface typeface) {
+        mSpans = spans;
+        mLinesGeometry = linesGeometry;
+        mWidth = width;
+        mTextSize = textSize;
+        mTypeface = typeface;
+    }
+
+    /**
+     * Compute backgrounds of all {@link RoundedCornersBackgroundSpan}s of layout's text.
+     *
+     * @param layout layout of text
+     * @return geometry snapshot
+     */
+    @WorkerThread
+    @NonNull
+    public static BackgroundGeometry compute(@NonNull Layout layout) {
+        final CharSequence text = layout.getText();
+        final TextPaint paint = layout.getPaint();
+        final int width = layout.getWidth();
+        if (!(text instanceof Spanned)) {
+            return new BackgroundGeometry(Collections.<RoundedCornersBackgroundSpan>emptyList(),
+                    Collections.<SparseArray<LineGeometry>>emptyList(), width, paint.getTextSize(),
+                    paint.getTypeface());
+        }
+        final Spanned spanned = (Spanned) text;
+        final RoundedCornersBackgroundSpan[] spans = spanned.getSpans(0, spanned.length(),
+                RoundedCornersBackgroundSpan.class);
+        final List<RoundedCornersBackgroundSpan> spansList = new ArrayList<>(spans.length);
+        final List<SparseArray<LineGeometry>> linesGeometry = new ArrayList<>(spans.length);
+        final RectF rectangle = new RectF();
+        for (RoundedCornersBackgroundSpan span : spans) {
+            final RoundedBackgroundStyle style = span.getStyle();
+            final LineGeometryCalculator calculator = new LineGeometryCalculator();
+            final GeometrySpec spec = span.getGeometrySpec();
+            final int generation = span.getGeneration();
+            final int drawingGeneration = span.getDrawingGeneration();
+            final float radius = span.getCornersRadius();
+            final int firstLine = layout.getLineForOffset(spanned.getSpanStart(span));
+            final int lastLine = layout.getLineForOffset(spanned.getSpanEnd(span));
+            final SparseArray<LineGeometry> spanLines = new SparseArray<>(lastLine - firstLine + 1);
+            for (int line = firstLine; line <= lastLine; line++) {
+                final LineGeometry lineGeometry = new LineGeometry();
+                // the same arguments as Layout passes to LineBackgroundSpan
+                final int lineStart = layout.getLineStart(line);
+                calculator.calculate(spec, lineGeometry, paint, 0, width, layout.getLineTop(line),
+                        layout.getLineBaseline(line), text, lineStart, layout.getLineEnd(line), generation);
+                style.getRenderer().prepare(lineGeometry, radius, rectangle);
+                lineGeometry.setDrawingGeneration(drawingGeneration);
+                lineGeometry.makeImmutable();
+                spanLines.put(lineStart, lineGeometry);
+            }
+            spansList.add(span);
+            linesGeometry.add(spanLines);
+        }
+        return new BackgroundGeometry(spansList, linesGeometry, width, paint.getTextSize(), paint.getTypeface());
+    }
+
+    /**
+     * Compute backgrounds of layout's text using executor. Callback is invoked on the main thread
+     * unless computation has been cancelled.
+     *
+     * @param layout   layout of text
+     * @param executor executor that will compute backgrounds
+     * @param callback callback that receives computed geometry
+     * @return future that can be used to cancel computation
+     */
+    @NonNull
+    public static Future<BackgroundGeometry> computeAsync(@NonNull final Layout layout,
+                                                          @NonNull Executor executor,
+                                                          @NonNull final Callback callback) {
+        final MainThreadCallbackTask<BackgroundGeometry> task = new MainThreadCallbackTask<BackgroundGeometry>(
+                new Callable<BackgroundGeometry>() {
+                    @Override
+                    public BackgroundGeometry call() throws Exception {
+                        return compute(layout);
+                    }
+                }) {
+            @Override
+            protected void onResult(@NonNull BackgroundGeometry result) {
+                callback.onGeometryComputed(result);
+            }
+
+            @Override
+            protected void onError(@NonNull Throwable error) {
+                callback.onError(error);
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Compute backgrounds of many texts in parallel, for example of all items of a page of list.
+     * Layout of every text is created on executor's thread, so work is spread between threads of
+     * executor. Computed geometry is attached to spans on the main thread, then callback is
+     * invoked. Geometry of request is neither attached nor delivered to callback once its future
+     * has been cancelled, so cancel futures of items that disappear before completion.
+     *
+     * @param requests requests of texts and their layout parameters
+     * @param executor executor that will compute backgrounds, usually a pool with a thread per core
+     * @param callback callback that is notified about attached geometry
+     * @return futures in the same order as requests that can be used to cancel computation
+     */
+    @NonNull
+    public static List<Future<BackgroundGeometry>> computeAllAsync(@NonNull List<Request> requests,
+                                                                   @NonNull Executor executor,
+                                                                   @NonNull final BatchCallback callback) {
+        final int size = requests.size();
+        final List<Future<BackgroundGeometry>> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Request request = requests.get(i);
+            final int index = i;
+            final MainThreadCallbackTask<BackgroundGeometry> task = new MainThreadCallbackTask<BackgroundGeometry>(
+                    new Callable<BackgroundGeometry>() {
+                        @Override
+                        public BackgroundGeometry call() throws Exception {
+                            return compute(request.newLayout());
+                        }
+                    }) {
+                @Override
+                protected void onResult(@NonNull BackgroundGeometry result) {
+                    result.attach();
+                    callback.onGeometryAttached(index, result);
+                }
+
+                @Override
+                protected void onError(@NonNull Throwable error) {
+                    callback.onGeometryFailed(index, error);
+                }
+            };
+            // tasks are submitted in order of requests, so first items are computed first
+            executor.execute(task);
+            futures.add(task);
+        }
+        return futures;
+    }
+
+    /**
+     * Attach snapshot to spans. Must be called before text is drawn for the first time on the
+     * thread that draws text.
+     */
+    @UiThread
+    public void attach() {
+        for (int i = 0, size = mSpans.size(); i < size; i++) {
+            mSpans.get(i).attachGeometry(mWidth, mTextSize, mTypeface, mLinesGeometry.get(i));
+        }
+    }
+
+    /**
+     * Callback that receives asynchronously computed geometry.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread when geometry has been computed.
+         *
+         * @param geometry computed geometry
+         */
+        @UiThread
+        void onGeometryComputed(@NonNull BackgroundGeometry geometry);
+
+        /**
+         * Called on the main thread if geometry couldn't be computed.
+         *
+         * @param error error thrown while computing geometry
+         */
+        @UiThread
+        void onError(@NonNull Throwable error);
+    }
+
+    /**
+     * Callback that is notified about geometry computed by
+     * {@link #computeAllAsync(List, Executor, BatchCallback)}.
+     */
+    public interface BatchCallback {
+
+        /**
+         * Called on the main thread when geometry of request has been computed and attached
+         * to spans.
+         *
+         * @param index    index of request
+         * @param geometry attached geometry
+         */
+        @UiThread
+        void onGeometryAttached(int index, @NonNull BackgroundGeometry geometry);
+
+        /**
+         * Called on the main thread if geometry of request couldn't be computed. Other requests
+         * are not affected.
+         *
+         * @param index index of request
+         * @param error error thrown while computing geometry
+         */
+        @UiThread
+        void onGeometryFailed(int index, @NonNull Throwable error);
+    }
+
+    /**
+     * Text and layout parameters for computing backgrounds in batch. Parameters must be the same
+     * as TextView's ones, otherwise lines are calculated during drawing as usual.
+     */
+    public static final class Request {
+
+        private final Spanned mText;
+        private final int mWidth;
+        private final TextPaint mPaint;
+        private float mSpacingAdd;
+        private float mSpacingMult = 1f;
+        private boolean mIncludePad = true;
+
+        /**
+         * Create new request.
+         *
+         * @param text  text with {@link RoundedCornersBackgroundSpan}s that isn't edited while
+         *              backgrounds are computed
+         * @param width width of TextView without paddings
+         * @param paint paint of TextView. Paint is copied, so it can be modified after request
+         *              has been created.
+         */
+        public Request(@NonNull Spanned text, int width, @NonNull TextPaint paint) {
+            mText = text;
+            mWidth = width;
+            mPaint = new TextPaint(paint);
+        }
+
+        /**
+         * Set line spacing like {@link android.widget.TextView#setLineSpacing(float, float)}.
+         *
+         * @param add  extra spacing in pixels
+         * @param mult spacing multiplier
+         */
+        @NonNull
+        public Request setLineSpacing(float add, float mult) {
+            mSpacingAdd = add;
+            mSpacingMult = mult;
+            return this;
+        }
+
+        /**
+         * Set whether font padding is included like
+         * {@link android.widget.TextView#setIncludeFontPadding(boolean)}.
+         */
+        @NonNull
+        public Request setIncludeFontPadding(boolean includePad) {
+            mIncludePad = includePad;
+            return this;
+        }
+
+        @WorkerThread
+        @NonNull
+        Layout newLayout() {
+            return new StaticLayout(mText, mPaint, mWidth, Layout.Alignment.ALIGN_NORMAL,
+                    mSpacingMult, mSpacingAdd, mIncludePad);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Index of backgrounds ordered by their position in text. Allows to find backgrounds
+ * that intersect with a line without iterating over all text parts. Colors and positions of
+ * backgrounds are stored in parallel arrays, so there are no objects per text part.
+ * <p>
+ * Index can be modified when text is edited. Shifting positions of backgrounds after an edit
+ * is deferred: pending shift is applied to all backgrounds starting from gap index and is moved
+ * only when an edit happens at another background, so consecutive edits of the same part
+ * don't touch positions of the following parts.
+ */
+final class BackgroundHoldersIndex {
+
+    /**
+     * Colors of backgrounds ordered by start offset.
+     */
+    private int[] mColors;
+
+    /**
+     * Start and end offsets of backgrounds. Text parts never overlap, so these arrays are sorted
+     * too. Offsets of backgrounds starting from {@link #mGapIndex} don't include pending shift.
+     */
+    private int[] mStarts;
+    private int[] mEnds;
+
+    private int mSize;
+
+    /**
+     * Index of first background with pending shift.
+     */
+    private int mGapIndex;
+
+    /**
+     * Pending shift of backgrounds starting from {@link #mGapIndex}.
+     */
+    private int mGapShift;
+
+    /**
+     * Constructor. Index takes ownership of arrays.
+     *
+     * @param colors colors of backgrounds in the same order as text parts are appended
+     * @param starts start offsets of backgrounds
+     * @param ends   end offsets of backgrounds
+     */
+    BackgroundHoldersIndex(@NonNull int[] colors, @NonNull int[] starts, @NonNull int[] ends) {
+        mColors = colors;
+        mStarts = starts;
+        mEnds = ends;
+        mSize = colors.length;
+        mGapIndex = mSize;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getColor(int index) {
+        return mColors[index];
+    }
+
+    void setColor(int index, int color) {
+        mColors[index] = color;
+    }
+
+    int getStart(int index) {
+        return index < mGapIndex ? mStarts[index] : mStarts[index] + mGapShift;
+    }
+
+    int getEnd(int index) {
+        return index < mGapIndex ? mEnds[index] : mEnds[index] + mGapShift;
+    }
+
+    /**
+     * Find index of the first background that ends at or after specified offset.
+     *
+     * @param start start offset of line
+     * @return index of first background that might intersect with line or {@link #size()}
+     * if there is no such background
+     */
+    int findFirst(int start) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (getEnd(middle) < start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Set position of background.
+     *
+     * @param index index of background
+     * @param start start offset of background
+     * @param end   end offset of background
+     */
+    void set(int index, int start, int end) {
+        final int shift = index < mGapIndex ? 0 : mGapShift;
+        mStarts[index] = start - shift;
+        mEnds[index] = end - shift;
+    }
+
+    /**
+     * Shift positions of all backgrounds starting from specified index.
+     *
+     * @param fromIndex index of first background to shift
+     * @param shift     number of characters to shift by
+     */
+    void shift(int fromIndex, int shift) {
+        if (shift == 0) {
+            return;
+        }
+        moveGap(fromIndex);
+        mGapShift += shift;
+    }
+
+    /**
+     * Insert background.
+     *
+     * @param index index of new background
+     * @param color color of background
+     * @param start start offset of background
+     * @param end   end offset of background
+     */
+    void insert(int index, int color, int start, int end) {
+        moveGap(index);
+        if (mSize == mColors.length) {
+            final int capacity = Math.max(1, mSize * 2);
+            final int[] colors = new int[capacity];
+            final int[] starts = new int[capacity];
+            final int[] ends = new int[capacity];
+            System.arraycopy(mColors, 0, colors, 0, mSize);
+            System.arraycopy(mStarts, 0, starts, 0, mSize);
+            System.arraycopy(mEnds, 0, ends, 0, mSize);
+            mColors = colors;
+            mStarts = starts;
+            mEnds = ends;
+        }
+        final int count = mSize - index;
+        System.arraycopy(mColors, index, mColors, index + 1, count);
+        System.arraycopy(mStarts, index, mStarts, index + 1, count);
+        System.arraycopy(mEnds, index, mEnds, index + 1, count);
+        mSize++;
+        mColors[index] = color;
+        set(index, start, end);
+    }
+
+    /**
+     * Remove background.
+     *
+     * @param index index of background
+     */
+    void remove(int index) {
+        moveGap(index);
+        final int count = mSize - index - 1;
+        System.arraycopy(mColors, index + 1, mColors, index, count);
+        System.arraycopy(mStarts, index + 1, mStarts, index, count);
+        System.arraycopy(mEnds, index + 1, mEnds, index, count);
+        mSize--;
+    }
+
+    /**
+     * Move pending shift, so it applies to backgrounds starting from specified index.
+     */
+    private void moveGap(int index) {
+        if (mGapShift == 0) {
+            mGapIndex = index;
+            return;
+        }
+        if (index > mGapIndex) {
+            for (int i = mGapIndex; i < index; i++) {
+                mStarts[i] += mGapShift;
+                mEnds[i] += mGapShift;
+            }
+        } else {
+            for (int i = index; i < mGapIndex; i++) {
+                mStarts[i] -= mGapShift;
+                mEnds[i] -= mGapShift;
+            }
+        }
+        mGapIndex = index;
+    }
+}
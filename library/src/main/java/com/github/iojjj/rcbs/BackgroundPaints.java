@@ -0,0 +1,41 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Paint;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * Paints of backgrounds. Every thread draws backgrounds with its own paint whose color is
+ * changed on every request, so any number of colors and animated colors don't allocate paints.
+ * Canvas copies paint when recording pictures and display lists, so paint can be reused right
+ * after a drawing call.
+ */
+final class BackgroundPaints {
+
+    private static final ThreadLocal<Paint> PAINT = new ThreadLocal<Paint>() {
+        @Override
+        protected Paint initialValue() {
+            return new Paint(Paint.ANTI_ALIAS_FLAG);
+        }
+    };
+
+    private BackgroundPaints() {
+        // no instances
+    }
+
+    /**
+     * Get paint of background with specified color. Returned paint is valid until next call on
+     * the same thread with another color.
+     *
+     * @param color color of background
+     * @return paint of current thread
+     */
+    @NonNull
+    static Paint obtain(@ColorInt int color) {
+        final Paint paint = PAINT.get();
+        if (paint.getColor() != color) {
+            paint.setColor(color);
+        }
+        return paint;
+    }
+}
@@ -0,0 +1,257 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+/**
+ * Editor of text parts of editable text created by
+ * {@link RoundedCornersBackgroundSpan.Builder#buildEditable()}. Parts can be inserted, removed
+ * and changed without building text again. Positions of backgrounds are updated incrementally
+ * and only lines affected by an edit are calculated again.
+ * <p>
+ * Editor also watches text, so text can be edited directly, for example by user in EditText.
+ * Text inserted at the edge of a part becomes a part of it, parts whose text has been deleted
+ * completely are removed.
+ * <p>
+ * Editor must be used on the thread that draws text. TextView copies text passed to it unless
+ * its {@link android.text.Editable.Factory} returns the same instance, so set such a factory via
+ * {@link android.widget.TextView#setEditableFactory(Editable.Factory)} and pass text with
+ * {@link android.widget.TextView.BufferType#EDITABLE} buffer type. Backgrounds of editable text
+ * can't be precomputed with {@link BackgroundGeometry}.
+ */
+@UiThread
+public final class BackgroundPartsEditor implements TextWatcher {
+
+    private final SpannableStringBuilder mText;
+    private final RoundedCornersBackgroundSpan mSpan;
+    private final BackgroundHoldersIndex mParts;
+
+    /**
+     * Flag indicates that text is being changed by editor, so positions of parts are updated
+     * by editor itself.
+     */
+    private boolean mEditingParts;
+
+    BackgroundPartsEditor(@NonNull SpannableStringBuilder text, @NonNull RoundedCornersBackgroundSpan span) {
+        mText = text;
+        mSpan = span;
+        mParts = span.getGeometrySpec().getBackgroundHolders();
+        text.setSpan(this, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+    }
+
+    /**
+     * Get edited text.
+     */
+    @NonNull
+    public Editable getText() {
+        return mText;
+    }
+
+    /**
+     * Get number of text parts.
+     */
+    public int getPartsCount() {
+        return mParts.size();
+    }
+
+    /**
+     * Get start position of text part.
+     *
+     * @param index index of text part
+     */
+    public int getPartStart(int index) {
+        checkIndex(index, mParts.size());
+        return mParts.getStart(index);
+    }
+
+    /**
+     * Get end position of text part.
+     *
+     * @param index index of text part
+     */
+    public int getPartEnd(int index) {
+        checkIndex(index, mParts.size());
+        return mParts.getEnd(index);
+    }
+
+    /**
+     * Add text part to the end of text.
+     *
+     * @param textPart text part
+     * @param bgColor  background color or 0 for text part without background
+     */
+    public void addPart(@NonNull CharSequence textPart, @ColorInt int bgColor) {
+        insertPart(mParts.size(), textPart, bgColor);
+    }
+
+    /**
+     * Insert text part.
+     *
+     * @param index    index of new text part
+     * @param textPart text part
+     * @param bgColor  background color or 0 for text part without background
+     */
+    public void insertPart(int index, @NonNull CharSequence textPart, @ColorInt int bgColor) {
+        final int size = mParts.size();
+        checkIndex(index, size + 1);
+        final SpannableStringBuilder inserted = new SpannableStringBuilder(textPart);
+        final int position;
+        final int partStart;
+        if (size == 0) {
+            position = mText.length();
+            partStart = position;
+        } else {
+            // separator is placed between new part and its neighbour
+            final int separatorStart;
+            if (index == size) {
+                position = mParts.getEnd(size - 1);
+                partStart = position + 1;
+                separatorStart = 0;
+            } else {
+                position = mParts.getStart(index);
+                partStart = position;
+                separatorStart = textPart.length();
+            }
+            inserted.insert(separatorStart, String.valueOf(RoundedCornersBackgroundSpan.SEPARATOR));
+            inserted.setSpan(SpacingSpan.newInstance(mSpan.getGeometrySpec().getSeparatorWidth()), separatorStart,
+                    separatorStart + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        replaceText(position, position, inserted);
+        mParts.shift(index, inserted.length());
+        mParts.insert(index, bgColor, partStart, partStart + textPart.length());
+    }
+
+    /**
+     * Remove text part together with separator next to it.
+     *
+     * @param index index of text part
+     */
+    public void removePart(int index) {
+        final int size = mParts.size();
+        checkIndex(index, size);
+        final int start;
+        final int end;
+        if (size == 1) {
+            start = mParts.getStart(index);
+            end = mParts.getEnd(index);
+        } else if (index == 0) {
+            start = mParts.getStart(index);
+            end = mParts.getStart(index + 1);
+        } else {
+            start = mParts.getEnd(index - 1);
+            end = mParts.getEnd(index);
+        }
+        replaceText(start, end, "");
+        mParts.remove(index);
+        mParts.shift(index, start - end);
+    }
+
+    /**
+     * Change text of text part.
+     *
+     * @param index    index of text part
+     * @param textPart new text of text part
+     */
+    public void setPartText(int index, @NonNull CharSequence textPart) {
+        checkIndex(index, mParts.size());
+        final int start = mParts.getStart(index);
+        final int end = mParts.getEnd(index);
+        replaceText(start, end, textPart);
+        mParts.set(index, start, start + textPart.length());
+        mParts.shift(index + 1, textPart.length() - (end - start));
+    }
+
+    /**
+     * Change background color of text part. Text isn't changed, so view that shows text must
+     * be invalidated to draw new color.
+     *
+     * @param index   index of text part
+     * @param bgColor background color or 0 for text part without background
+     */
+    public void setPartColor(int index, @ColorInt int bgColor) {
+        checkIndex(index, mParts.size());
+        mSpan.setPartColor(index, bgColor);
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        // do nothing
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (s != mText) {
+            return;
+        }
+        if (!mEditingParts) {
+            updateParts(start, before, count);
+        }
+        mSpan.onTextChanged(s, start, before, count);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        // do nothing
+    }
+
+    /**
+     * Replace range of text without updating positions of parts by watcher.
+     */
+    private void replaceText(int start, int end, @NonNull CharSequence text) {
+        mEditingParts = true;
+        try {
+            mText.replace(start, end, text);
+        } finally {
+            mEditingParts = false;
+        }
+    }
+
+    /**
+     * Update positions of parts after text has been edited directly. Only parts that intersect
+     * with edited range are visited, positions of next parts are shifted lazily.
+     *
+     * @param start  start position of edited range
+     * @param before length of replaced text
+     * @param count  length of new text
+     */
+    private void updateParts(int start, int before, int count) {
+        final int editEnd = start + before;
+        final int newEditEnd = start + count;
+        int index = mParts.findFirst(start);
+        int prevEnd = index > 0 ? mParts.getEnd(index - 1) : 0;
+        while (index < mParts.size()) {
+            final int partStart = mParts.getStart(index);
+            if (partStart > editEnd) {
+                break;
+            }
+            final int partEnd = mParts.getEnd(index);
+            // text inserted at the edge of part extends it
+            int newStart = partStart <= start ? partStart
+                    : partStart >= editEnd ? partStart + count - before : newEditEnd;
+            int newEnd = partEnd >= editEnd ? partEnd + count - before : newEditEnd;
+            // adjacent parts must not overlap
+            newStart = Math.max(newStart, prevEnd);
+            newEnd = Math.max(newEnd, newStart);
+            if (newStart == newEnd && partStart != partEnd) {
+                // whole text of part has been deleted
+                mParts.remove(index);
+                continue;
+            }
+            mParts.set(index, newStart, newEnd);
+            prevEnd = newEnd;
+            index++;
+        }
+        mParts.shift(index, count - before);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
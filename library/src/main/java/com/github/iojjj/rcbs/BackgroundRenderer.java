@@ -0,0 +1,32 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Strategy of drawing backgrounds of a line. Renderers are shared by all spans and threads, so
+ * implementations must not keep any per-draw state.
+ */
+interface BackgroundRenderer {
+
+    /**
+     * Prepare cached drawing data of line. Called once after geometry of line has been
+     * calculated, possibly on a background thread.
+     *
+     * @param lineGeometry geometry of line
+     * @param radius       corners radius
+     * @param rectangle    rectangle that can be used for temporary calculations
+     */
+    void prepare(@NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle);
+
+    /**
+     * Draw backgrounds of line.
+     *
+     * @param c            canvas to draw on
+     * @param lineGeometry geometry of line
+     * @param radius       corners radius
+     * @param rectangle    rectangle that can be used for temporary calculations
+     */
+    void draw(@NonNull Canvas c, @NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle);
+}
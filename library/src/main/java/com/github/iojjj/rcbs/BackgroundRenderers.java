@@ -0,0 +1,43 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Shared instances of background renderers.
+ */
+final class BackgroundRenderers {
+
+    private static final BackgroundRenderer ROUND_RECT = new RoundRectRenderer();
+    private static final BackgroundRenderer RECT = new RectRenderer();
+    private static final BackgroundRenderer PATHS = new PathRenderer(false);
+    private static final BackgroundRenderer CORNER_BITMAP = new CornerBitmapRenderer();
+    private static final BackgroundRenderer OUTLINE = new PathRenderer(true);
+
+    private BackgroundRenderers() {
+        // no instances
+    }
+
+    /**
+     * Get renderer of specified type.
+     *
+     * @param rendererType type of renderer
+     * @return shared renderer
+     */
+    @NonNull
+    static BackgroundRenderer get(@RendererType int rendererType) {
+        switch (rendererType) {
+            case RoundedCornersBackgroundSpan.RENDERER_RECT:
+                return RECT;
+            case RoundedCornersBackgroundSpan.RENDERER_PATHS:
+                return PATHS;
+            case RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP:
+                return CORNER_BITMAP;
+            case RoundedCornersBackgroundSpan.RENDERER_OUTLINE:
+                return OUTLINE;
+            case RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT:
+                return ROUND_RECT;
+            default:
+                throw new IllegalArgumentException("Unknown renderer type: " + rendererType);
+        }
+    }
+}
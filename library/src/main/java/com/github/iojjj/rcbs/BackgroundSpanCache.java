@@ -0,0 +1,221 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.Spanned;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Memory-bounded cache of texts built by {@link RoundedCornersBackgroundSpan.Builder#build(BackgroundSpanCache)}.
+ * Texts are keyed by text parts, their colors and style, least recently used texts are evicted
+ * once estimated size of cached texts exceeds maximum size.
+ * <p>
+ * Size of cached text includes memory retained by its span for drawing: geometry of lines, paths
+ * and recorded pictures of every layout that shows the text. It grows as texts are drawn, so
+ * sizes of all cached texts are re-evaluated whenever text is put to cache and by
+ * {@link #getSize()} and {@link #trimToSize()}. Spans track their retained size while drawing,
+ * so re-evaluation takes time proportional to the number of cached texts and doesn't wait for
+ * spans being drawn.
+ * <p>
+ * Cached texts are immutable and their spans are shared by every view that shows them, so
+ * parts colors, corners radius and text padding of shared spans can't be changed. Cache is
+ * thread-safe.
+ */
+public final class BackgroundSpanCache {
+
+    /**
+     * Estimated size of text with a single part in bytes: text object, span and its geometry
+     * parameters.
+     */
+    private static final int TEXT_BASE_SIZE = 256;
+
+    /**
+     * Estimated size of every text part in bytes: separator span, color and positions of part.
+     */
+    private static final int PART_SIZE = 96;
+
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * Create new cache.
+     *
+     * @param maxSize maximum estimated size of cached texts in bytes
+     */
+    public BackgroundSpanCache(@IntRange(from = 1) int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive.");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Get cached text.
+     *
+     * @param key key of text
+     * @return cached text or null if there is no text for the key
+     */
+    @Nullable
+    synchronized Spanned get(@NonNull Key key) {
+        final Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.mText;
+    }
+
+    /**
+     * Put text to cache and evict least recently used texts if needed. Texts larger than maximum
+     * size are not cached.
+     *
+     * @param key  key of text
+     * @param text built text
+     * @param span span of built text
+     */
+    synchronized void put(@NonNull Key key, @NonNull Spanned text, @NonNull RoundedCornersBackgroundSpan span) {
+        final int size = TEXT_BASE_SIZE + text.length() * 2 + (key.mTexts.length - 1) * PART_SIZE;
+        if (size > mMaxSize) {
+            return;
+        }
+        mEntries.put(key, new Entry(text, span, size));
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Evict least recently used texts until estimated size of cached texts, including memory
+     * retained by their spans since they were cached, fits maximum size.
+     */
+    public synchronized void trimToSize() {
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Remove all cached texts.
+     */
+    public synchronized void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Get estimated size of cached texts in bytes, including memory retained by their spans.
+     */
+    public synchronized int getSize() {
+        int size = 0;
+        for (Entry entry : mEntries.values()) {
+            size += entry.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Get maximum estimated size of cached texts in bytes.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Get number of cached texts.
+     */
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Get number of texts returned from cache.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Get number of texts that were not found in cache and had to be built.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Get number of texts evicted from cache.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private void trimToSize(int maxSize) {
+        int size = getSize();
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getSize();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Key of cached text. Part texts and colors are copied, so builder can be reused.
+     */
+    static final class Key {
+
+        private final String[] mTexts;
+        private final int[] mColors;
+        private final RoundedBackgroundStyle mStyle;
+        private final int mHashCode;
+
+        Key(@NonNull String[] texts, @NonNull int[] colors, @NonNull RoundedBackgroundStyle style) {
+            mTexts = texts;
+            mColors = colors;
+            mStyle = style;
+            mHashCode = 31 * (31 * Arrays.hashCode(texts) + Arrays.hashCode(colors)) + style.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return mHashCode == that.mHashCode
+                    && Arrays.equals(mTexts, that.mTexts)
+                    && Arrays.equals(mColors, that.mColors)
+                    && mStyle.equals(that.mStyle);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Spanned mText;
+        private final RoundedCornersBackgroundSpan mSpan;
+        private final int mBaseSize;
+
+        Entry(@NonNull Spanned text, @NonNull RoundedCornersBackgroundSpan span, int baseSize) {
+            mText = text;
+            mSpan = span;
+            mBaseSize = baseSize;
+        }
+
+        /**
+         * Get estimated size of text and memory retained by its span.
+         */
+        int getSize() {
+            return mBaseSize + mSpan.getRetainedSize();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Renderer that draws corners of backgrounds from cached bitmaps of circles and fills the rest
+ * of background with plain rectangles. It avoids rasterizing rounded rectangles on every draw,
+ * which is slow on software canvas. Backgrounds too small for cached corners are drawn as
+ * rounded rectangles.
+ */
+final class CornerBitmapRenderer implements BackgroundRenderer {
+
+    /**
+     * Maximum number of cached bitmaps. Least recently used bitmap is evicted once it's reached.
+     */
+    private static final int MAX_CORNERS = 16;
+
+    /**
+     * Paint used for drawing corners. Shared between threads, so it must never be modified.
+     */
+    private static final Paint CORNER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Cached corners ordered from most to least recently used. Cache is small, so it's searched
+     * linearly, which doesn't allocate keys on every lookup.
+     */
+    private final Corners[] mCorners = new Corners[MAX_CORNERS];
+    private int mCornersCount;
+
+    @Override
+    public void prepare(@NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        // nothing to prepare
+    }
+
+    @Override
+    public void draw(@NonNull Canvas c, @NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        for (int i = 0, size = lineGeometry.size(); i < size; i++) {
+            final int bgColor = lineGeometry.getColor(i);
+            // skip transparent backgrounds
+            if (bgColor == 0) {
+                continue;
+            }
+            final float left = lineGeometry.getLeft(i);
+            final float top = lineGeometry.getTop(i);
+            final float right = lineGeometry.getRight(i);
+            final float bottom = lineGeometry.getBottom(i);
+            final Paint paint = BackgroundPaints.obtain(bgColor);
+            if (radius <= 0) {
+                c.drawRect(left, top, right, bottom, paint);
+                continue;
+            }
+            if (right - left < 2 * radius || bottom - top < 2 * radius) {
+                // canvas reduces radius of small rectangles, cached corners can't be used
+                rectangle.set(left, top, right, bottom);
+                c.drawRoundRect(rectangle, radius, radius, paint);
+                continue;
+            }
+            final Corners corners = obtainCorners(bgColor, radius);
+            rectangle.set(left, top, left + radius, top + radius);
+            c.drawBitmap(corners.mBitmap, corners.mTopLeft, rectangle, CORNER_PAINT);
+            rectangle.set(right - radius, top, right, top + radius);
+            c.drawBitmap(corners.mBitmap, corners.mTopRight, rectangle, CORNER_PAINT);
+            rectangle.set(right - radius, bottom - radius, right, bottom);
+            c.drawBitmap(corners.mBitmap, corners.mBottomRight, rectangle, CORNER_PAINT);
+            rectangle.set(left, bottom - radius, left + radius, bottom);
+            c.drawBitmap(corners.mBitmap, corners.mBottomLeft, rectangle, CORNER_PAINT);
+            c.drawRect(left + radius, top, right - radius, top + radius, paint);
+            c.drawRect(left, top + radius, right, bottom - radius, paint);
+            c.drawRect(left + radius, bottom - radius, right - radius, bottom, paint);
+        }
+    }
+
+    /**
+     * Get cached corners of specified color and radius. Corners are created and least recently
+     * used corners are evicted if there are no such corners in cache.
+     */
+    @NonNull
+    private synchronized Corners obtainCorners(int color, float radius) {
+        final Corners[] cache = mCorners;
+        int index = 0;
+        while (index < mCornersCount && (cache[index].mColor != color || cache[index].mRadius != radius)) {
+            index++;
+        }
+        final Corners corners;
+        if (index < mCornersCount) {
+            corners = cache[index];
+        } else {
+            corners = new Corners(color, radius);
+            if (mCornersCount < MAX_CORNERS) {
+                mCornersCount++;
+            }
+            // evicted bitmap might still be referenced by display lists, so it isn't recycled
+            index = mCornersCount - 1;
+        }
+        System.arraycopy(cache, 0, cache, 1, index);
+        cache[0] = corners;
+        return corners;
+    }
+
+    /**
+     * Get number of cached corners.
+     */
+    synchronized int getCachedCornersCount() {
+        return mCornersCount;
+    }
+
+    /**
+     * Bitmap of circle and its quarters used as corners.
+     */
+    private static final class Corners {
+
+        private final int mColor;
+        private final float mRadius;
+        private final Bitmap mBitmap;
+        private final Rect mTopLeft;
+        private final Rect mTopRight;
+        private final Rect mBottomRight;
+        private final Rect mBottomLeft;
+
+        Corners(int color, float radius) {
+            mColor = color;
+            mRadius = radius;
+            final int halfSize = (int) Math.ceil(radius);
+            final int size = halfSize * 2;
+            mBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            new Canvas(mBitmap).drawCircle(halfSize, halfSize, halfSize, BackgroundPaints.obtain(color));
+            mTopLeft = new Rect(0, 0, halfSize, halfSize);
+            mTopRight = new Rect(halfSize, 0, size, halfSize);
+            mBottomRight = new Rect(halfSize, halfSize, size, size);
+            mBottomLeft = new Rect(0, halfSize, halfSize, size);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+import java.text.Bidi;
+
+/**
+ * Directions of paragraphs of text. Adjacent paragraphs with the same direction are merged into
+ * runs, so only start positions of runs and direction of the first run are stored. Doesn't depend
+ * on Android framework.
+ */
+final class DirectionRuns {
+
+    private static final char PARAGRAPH_SEPARATOR = '\n';
+
+    /**
+     * Start positions of runs. First run always starts at 0, directions of runs alternate.
+     */
+    private final int[] mRunStarts;
+
+    /**
+     * Flag indicates that the first run is in RTL direction.
+     */
+    private final boolean mFirstRunRtl;
+
+    private DirectionRuns(@NonNull int[] runStarts, boolean firstRunRtl) {
+        mRunStarts = runStarts;
+        mFirstRunRtl = firstRunRtl;
+    }
+
+    /**
+     * Detect direction of every paragraph of text. Direction of paragraph is determined by its
+     * first strong character, paragraphs without strong characters are LTR.
+     *
+     * @param text any text
+     * @return directions of paragraphs
+     */
+    @NonNull
+    static DirectionRuns compute(@NonNull CharSequence text) {
+        final int length = text.length();
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        int[] runStarts = new int[1];
+        int runsCount = 1;
+        boolean firstRunRtl = false;
+        boolean lastRunRtl = false;
+        int paragraphStart = 0;
+        while (paragraphStart <= length) {
+            int paragraphEnd = paragraphStart;
+            while (paragraphEnd < length && chars[paragraphEnd] != PARAGRAPH_SEPARATOR) {
+                paragraphEnd++;
+            }
+            final boolean rtl = isRtlParagraph(chars, paragraphStart, paragraphEnd);
+            if (paragraphStart == 0) {
+                firstRunRtl = rtl;
+                lastRunRtl = rtl;
+            } else if (rtl != lastRunRtl) {
+                if (runsCount == runStarts.length) {
+                    final int[] newRunStarts = new int[runsCount * 2];
+                    System.arraycopy(runStarts, 0, newRunStarts, 0, runsCount);
+                    runStarts = newRunStarts;
+                }
+                runStarts[runsCount++] = paragraphStart;
+                lastRunRtl = rtl;
+            }
+            paragraphStart = paragraphEnd + 1;
+        }
+        if (runsCount != runStarts.length) {
+            final int[] trimmedRunStarts = new int[runsCount];
+            System.arraycopy(runStarts, 0, trimmedRunStarts, 0, runsCount);
+            runStarts = trimmedRunStarts;
+        }
+        return new DirectionRuns(runStarts, firstRunRtl);
+    }
+
+    /**
+     * Check if range of text contains characters that might change direction of its paragraph.
+     *
+     * @param text  any text
+     * @param start start of range
+     * @param end   end of range
+     * @return true if range contains RTL or embedding characters, false otherwise
+     */
+    static boolean requiresBidi(@NonNull CharSequence text, int start, int end) {
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = text.charAt(i);
+        }
+        return Bidi.requiresBidi(chars, 0, chars.length);
+    }
+
+    private static boolean isRtlParagraph(@NonNull char[] chars, int start, int end) {
+        if (start == end || !Bidi.requiresBidi(chars, start, end)) {
+            return false;
+        }
+        final Bidi bidi = new Bidi(chars, start, null, 0, end - start, Bidi.DIRECTION_DEFAULT_LEFT_TO_RIGHT);
+        return !bidi.baseIsLeftToRight();
+    }
+
+    /**
+     * Check if all paragraphs of text are in LTR direction.
+     */
+    boolean isLtr() {
+        return mRunStarts.length == 1 && !mFirstRunRtl;
+    }
+
+    /**
+     * Check if paragraph that contains specified position is in RTL direction.
+     *
+     * @param offset position in text
+     * @return true if paragraph is in RTL direction, false otherwise
+     */
+    boolean isRtl(int offset) {
+        int low = 0;
+        int high = mRunStarts.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (mRunStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // directions of runs alternate
+        return mFirstRunRtl == ((low & 1) == 0);
+    }
+}
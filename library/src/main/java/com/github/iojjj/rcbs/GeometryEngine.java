@@ -0,0 +1,268 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Engine that calculates rectangles of backgrounds on a line. Engine works with line ranges and
+ * widths provided by {@link TextMeasurer} and doesn't depend on Android framework. Calculation
+ * is split into measuring of text parts and laying out their rectangles, so rectangles can be
+ * laid out again with another padding without measuring text. Engine has no state, so it can
+ * be shared between threads.
+ */
+final class GeometryEngine {
+
+    private static final char LINE_SEPARATOR = '\n';
+
+    /**
+     * Calculate backgrounds on line.
+     *
+     * @param spec     parameters of backgrounds
+     * @param measurer measurer of text
+     * @param text     text of layout
+     * @param start    start position of line
+     * @param end      end position of line
+     * @param left     left bound of line
+     * @param right    right bound of line
+     * @param top      top of line
+     * @param bottom   bottom of text on line
+     * @param out      rectangles of backgrounds on line
+     */
+    void calculate(@NonNull GeometrySpec spec, @NonNull TextMeasurer measurer, @NonNull CharSequence text,
+                   int start, int end, int left, int right, float top, float bottom, @NonNull LineRects out) {
+        final boolean rtl = spec.isRtl(start);
+        out.clear(top, bottom, rtl);
+        measureBackgrounds(spec, measurer, text, start, end, rtl, out);
+        layout(spec, spec.getPadding(), left, right, out);
+    }
+
+    /**
+     * Lay out measured backgrounds on line.
+     *
+     * @param spec    parameters of backgrounds
+     * @param padding text padding
+     * @param left    left bound of line
+     * @param right   right bound of line
+     * @param rects   measured backgrounds on line
+     */
+    void layout(@NonNull GeometrySpec spec, float padding, int left, int right, @NonNull LineRects rects) {
+        rects.setPadding(padding);
+        final int size = rects.size();
+        if (size == 0) {
+            return;
+        }
+        final boolean rtl = rects.isRtl();
+        final float rectTop = rects.getTextTop() - padding;
+        final float rectBottom = rects.getTextBottom() + padding;
+        final float separatorWidth = spec.getSeparatorWidth();
+        // each text part is measured only once, so width of previous text is accumulated
+        float prevTextWidth = 0;
+        for (int i = 0; i < size; i++) {
+            final float width = rects.getWidth(i);
+            float l = left;
+            float r = right;
+            if (rtl) {
+                r -= prevTextWidth;
+                l = r - width;
+            } else {
+                l += prevTextWidth;
+                r = l + width;
+            }
+            rects.setRect(i, l - padding, rectTop, r + padding, rectBottom);
+            prevTextWidth += width + separatorWidth;
+        }
+        final float alignmentFix = calculateAlignmentFix(spec, padding, left, right, rects)
+                + calculateLeadingFix(spec, rects.getLeadingWidth());
+        if (alignmentFix == 0) {
+            return;
+        }
+        final float shift = rtl ? -alignmentFix : alignmentFix;
+        for (int i = 0; i < size; i++) {
+            rects.setRect(i, rects.getLeft(i) + shift, rectTop, rects.getRight(i) + shift, rectBottom);
+        }
+    }
+
+    /**
+     * Update colors of backgrounds on line after colors of text parts have been changed.
+     *
+     * @param spec  parameters of backgrounds
+     * @param start start position of line
+     * @param rects backgrounds on line
+     */
+    void updateColors(@NonNull GeometrySpec spec, int start, @NonNull LineRects rects) {
+        final BackgroundHoldersIndex backgroundHolders = spec.getBackgroundHolders();
+        for (int i = 0, size = rects.size(); i < size; i++) {
+            // previous part might end right where this one starts if separator has been deleted
+            final int index = backgroundHolders.findFirst(start + rects.getOffset(i) + 1);
+            rects.setColor(i, backgroundHolders.getColor(index));
+        }
+    }
+
+    private static void measureBackgrounds(@NonNull GeometrySpec spec, @NonNull TextMeasurer measurer,
+                                           @NonNull CharSequence text, int start, int end, boolean rtl,
+                                           @NonNull LineRects out) {
+        // do not add background to spaces at the beginning and at the end of line
+        final int lineStart = getTrimmedStart(text, start, end);
+        final int lineEnd = getTrimmedEnd(text, lineStart, end);
+        // skip empty lines
+        if (lineStart == lineEnd) {
+            return;
+        }
+        final BackgroundHoldersIndex backgroundHolders = spec.getBackgroundHolders();
+        out.setLeadingWidth(measureLeadingSeparators(spec, text, start, lineStart));
+        final int holdersCount = backgroundHolders.size();
+        for (int i = backgroundHolders.findFirst(lineStart); i < holdersCount; i++) {
+            final int holderStart = backgroundHolders.getStart(i);
+            if (lineEnd < holderStart) {
+                // all next backgrounds are placed after this line
+                break;
+            }
+            final int holderEnd = backgroundHolders.getEnd(i);
+            final int startInText = lineStart < holderStart ? holderStart : lineStart;
+            final int endInText = lineEnd > holderEnd ? holderEnd : lineEnd;
+            // skip empty parts
+            if (startInText >= endInText) {
+                continue;
+            }
+            final float width;
+            try {
+                width = measurer.measure(startInText, endInText);
+            } catch (IndexOutOfBoundsException e) {
+                // skip drawing. This crashes on Android 4.3 (potentially on all 4.x) devices
+                // without `continue` it will draw an empty rectangle with rounded corners (if padding has been set)
+                continue;
+            }
+            // start of text part is on the right side of RTL line
+            final boolean partStart = startInText == holderStart;
+            final boolean partEnd = endInText == holderEnd;
+            final boolean roundedLeft = rtl ? partEnd : partStart;
+            final boolean roundedRight = rtl ? partStart : partEnd;
+            final int roundedCorners = (roundedLeft ? LineRects.ROUNDED_LEFT : 0)
+                    | (roundedRight ? LineRects.ROUNDED_RIGHT : 0);
+            out.add(backgroundHolders.getColor(i), startInText - start, width, roundedCorners);
+        }
+    }
+
+    /**
+     * Measure separators placed at the start of line. Since API 23 layouts may wrap a line right
+     * before a separator, then separator keeps its width and text of line is shifted by it.
+     *
+     * @param spec      parameters of backgrounds
+     * @param text      text of layout
+     * @param start     start position of line
+     * @param lineStart position of first non-space character on line
+     * @return width of separators at the start of line
+     */
+    private static float measureLeadingSeparators(@NonNull GeometrySpec spec, @NonNull CharSequence text,
+                                                  int start, int lineStart) {
+        final BackgroundHoldersIndex backgroundHolders = spec.getBackgroundHolders();
+        final int holdersCount = backgroundHolders.size();
+        float width = 0;
+        for (int position = start; position < lineStart; position++) {
+            // separators are the only characters between text parts, spaces of parts are not shifted
+            final int index = backgroundHolders.findFirst(position + 1);
+            if (index < holdersCount && backgroundHolders.getStart(index) <= position) {
+                break;
+            }
+            if (!isSeparatorOnLineEdge(text, position, position + 1)) {
+                width += spec.getSeparatorWidth();
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Calculate shift of backgrounds caused by separators at the start of line. Aligned line is
+     * shifted by a part of their width, because layout aligns separators together with text.
+     *
+     * @return shift of backgrounds
+     */
+    private static float calculateLeadingFix(@NonNull GeometrySpec spec, float leadingWidth) {
+        final int textAlignment = spec.getTextAlignment();
+        if (textAlignment == GeometrySpec.ALIGN_CENTER) {
+            return leadingWidth / 2;
+        } else if (textAlignment == GeometrySpec.ALIGN_END) {
+            return 0;
+        }
+        return leadingWidth;
+    }
+
+    /**
+     * Calculate alignment fix value.
+     *
+     * @return alignment fix value
+     */
+    private static float calculateAlignmentFix(@NonNull GeometrySpec spec, float padding, int left, int right,
+                                               @NonNull LineRects rects) {
+        final int last = rects.size() - 1;
+        float fLeft = left;
+        float fRight = right;
+        final float mostLeft;
+        final float mostRight;
+        if (rects.isRtl()) {
+            mostLeft = rects.getLeft(last);
+            mostRight = rects.getRight(0);
+        } else {
+            mostLeft = rects.getLeft(0);
+            mostRight = rects.getRight(last);
+        }
+        if (mostLeft < left) {
+            fLeft = mostLeft;
+        }
+        if (mostRight > fRight) {
+            fRight = mostRight;
+        }
+        final float width = fRight - fLeft;
+        final float consumedWidth = mostRight - mostLeft;
+        final int textAlignment = spec.getTextAlignment();
+        if (textAlignment == GeometrySpec.ALIGN_CENTER) {
+            return (width - consumedWidth + padding) / 2;
+        } else if (textAlignment == GeometrySpec.ALIGN_END) {
+            return width - consumedWidth + padding;
+        }
+        return 0;
+    }
+
+    /**
+     * Check if separator is placed next to a line break or edge of text. Such separator has no
+     * width, see {@link SpacingSpan}.
+     *
+     * @param text  text of layout
+     * @param start start position of separator
+     * @param end   end position of separator
+     * @return true if separator starts or ends paragraph, false otherwise
+     */
+    static boolean isSeparatorOnLineEdge(@NonNull CharSequence text, int start, int end) {
+        return start == 0 || text.charAt(start - 1) == LINE_SEPARATOR
+                || end >= text.length() || text.charAt(end) == LINE_SEPARATOR;
+    }
+
+    /**
+     * Get position of first non-space character in range.
+     *
+     * @param text  any text
+     * @param start start of range
+     * @param end   end of range
+     * @return position of first non-space character or {@code end} if range contains only spaces
+     */
+    private static int getTrimmedStart(@NonNull CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Get position after last non-space character in range.
+     *
+     * @param text  any text
+     * @param start start of range
+     * @param end   end of range
+     * @return position after last non-space character or {@code start} if range contains only spaces
+     */
+    private static int getTrimmedEnd(@NonNull CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
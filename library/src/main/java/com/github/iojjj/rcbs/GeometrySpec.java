@@ -0,0 +1,92 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Parameters of backgrounds geometry. Doesn't depend on Android framework. Parameters are
+ * immutable unless text is edited, in which case positions of backgrounds and directions of
+ * paragraphs are updated by {@link BackgroundPartsEditor}, or padding is animated.
+ */
+final class GeometrySpec {
+
+    /**
+     * Align text at start.
+     */
+    static final int ALIGN_START = 0;
+
+    /**
+     * Align text at end.
+     */
+    static final int ALIGN_END = 1;
+
+    /**
+     * Align text at center.
+     */
+    static final int ALIGN_CENTER = 2;
+
+    private final BackgroundHoldersIndex mBackgroundHolders;
+    private volatile float mPadding;
+    private final float mSeparatorWidth;
+    private final int mTextAlignment;
+    private DirectionRuns mDirections;
+
+    GeometrySpec(@NonNull BackgroundHoldersIndex backgroundHolders, float padding, float separatorWidth,
+                 int textAlignment, @NonNull DirectionRuns directions) {
+        mBackgroundHolders = backgroundHolders;
+        mPadding = padding;
+        mSeparatorWidth = separatorWidth;
+        mTextAlignment = textAlignment;
+        mDirections = directions;
+    }
+
+    /**
+     * Backgrounds ordered by their position in text.
+     */
+    @NonNull
+    BackgroundHoldersIndex getBackgroundHolders() {
+        return mBackgroundHolders;
+    }
+
+    /**
+     * Text padding.
+     */
+    float getPadding() {
+        return mPadding;
+    }
+
+    void setPadding(float padding) {
+        mPadding = padding;
+    }
+
+    /**
+     * Width of separator between two parts.
+     */
+    float getSeparatorWidth() {
+        return mSeparatorWidth;
+    }
+
+    /**
+     * Text alignment, one of {@link #ALIGN_START}, {@link #ALIGN_END} or {@link #ALIGN_CENTER}.
+     */
+    int getTextAlignment() {
+        return mTextAlignment;
+    }
+
+    /**
+     * Check if paragraph that contains specified position is in RTL direction.
+     *
+     * @param offset position in text
+     */
+    boolean isRtl(int offset) {
+        return mDirections.isRtl(offset);
+    }
+
+    @NonNull
+    DirectionRuns getDirections() {
+        return mDirections;
+    }
+
+    void setDirections(@NonNull DirectionRuns directions) {
+        mDirections = directions;
+    }
+}
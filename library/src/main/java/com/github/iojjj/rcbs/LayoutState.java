@@ -0,0 +1,349 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+
+/**
+ * Mutable state of span for layouts with the same width and text paint. Span can be shown by many
+ * layouts at once, so all per-draw data is kept here instead of span itself. State is owned by
+ * span and accessed only under span's lock of layout states. State must not reference text of
+ * span, because the same span can be shown with different copies of text.
+ * <p>
+ * Cached lines are stored in parallel arrays ordered by start position of line. After text has
+ * been edited only lines that overlap edited paragraph are dropped. Lines after it are shifted
+ * lazily the same way as {@link BackgroundHoldersIndex} shifts text parts, and their geometry is
+ * moved to new position and generation when line is requested again.
+ */
+final class LayoutState {
+
+    /**
+     * Estimated size of state without line geometry and calculator in bytes.
+     */
+    private static final int BASE_SIZE = 512;
+
+    /**
+     * Estimated size of cache entry of a single line in bytes.
+     */
+    private static final int LINE_ENTRY_SIZE = 8;
+
+    /**
+     * Width of layout.
+     */
+    private final int mWidth;
+
+    /**
+     * Text size of layout's paint.
+     */
+    private final float mTextSize;
+
+    /**
+     * Typeface of layout's paint.
+     */
+    private final Typeface mTypeface;
+
+    /**
+     * Start positions of cached lines in ascending order. Positions of lines starting from
+     * {@link #mGapIndex} don't include pending shift.
+     */
+    private int[] mLineStarts = new int[0];
+
+    /**
+     * Cached geometry of lines in the same order as their start positions.
+     */
+    private LineGeometry[] mLinesGeometry = new LineGeometry[0];
+
+    private int mLinesCount;
+
+    /**
+     * Index of first line with pending shift.
+     */
+    private int mGapIndex;
+
+    /**
+     * Pending shift of lines starting from {@link #mGapIndex}.
+     */
+    private int mGapShift;
+
+    /**
+     * Generation of cache after last edit of text.
+     */
+    private int mEditGeneration;
+
+    /**
+     * Oldest generation of cache that has been changed only by edits of text since then. Lines
+     * computed for this or later generation stay valid after edits that didn't affect them.
+     */
+    private int mEditsStartGeneration;
+
+    /**
+     * Calculator of backgrounds for lines of layout.
+     */
+    private final LineGeometryCalculator mCalculator = new LineGeometryCalculator();
+
+    /**
+     * Rectangle used for drawing background.
+     */
+    private final RectF mRectangle = new RectF();
+
+    /**
+     * Estimated size of recorded pictures in bytes.
+     */
+    private int mPictureCacheSize;
+
+    /**
+     * Estimated size of cached lines in bytes, including their pictures. Size is updated whenever
+     * lines are changed, so it can be read without walking cached lines.
+     */
+    private int mLinesSize;
+
+    LayoutState(int width, float textSize, Typeface typeface) {
+        mWidth = width;
+        mTextSize = textSize;
+        mTypeface = typeface;
+    }
+
+    /**
+     * Check if state belongs to layout with specified width and paint.
+     */
+    boolean matches(int width, float textSize, Typeface typeface) {
+        return mWidth == width && mTextSize == textSize && mTypeface == typeface;
+    }
+
+    /**
+     * Get cached geometry of line. Geometry of line that hasn't been affected by edits of text
+     * since it has been computed is moved to current position and generation of line.
+     *
+     * @param lineStart start position of line
+     * @return geometry of line or null if line isn't cached
+     */
+    LineGeometry getLineGeometry(int lineStart) {
+        final int index = indexOf(lineStart);
+        if (index < 0) {
+            return null;
+        }
+        final LineGeometry lineGeometry = mLinesGeometry[index];
+        final int generation = lineGeometry.getGeneration();
+        if (generation >= mEditsStartGeneration && generation < mEditGeneration && !lineGeometry.isImmutable()) {
+            lineGeometry.offset(lineStart - lineGeometry.getStart(), mEditGeneration);
+        }
+        return lineGeometry;
+    }
+
+    /**
+     * Put geometry of line to cache. Picture of replaced geometry is released.
+     *
+     * @param lineStart    start position of line
+     * @param lineGeometry geometry of line
+     */
+    void putLineGeometry(int lineStart, @NonNull LineGeometry lineGeometry) {
+        final int index = indexOf(lineStart);
+        if (index >= 0) {
+            final LineGeometry oldLineGeometry = mLinesGeometry[index];
+            if (oldLineGeometry == lineGeometry) {
+                return;
+            }
+            mLinesSize -= oldLineGeometry.getEstimatedSize();
+            mPictureCacheSize -= oldLineGeometry.releasePicture();
+            mLinesGeometry[index] = lineGeometry;
+        } else {
+            insert(~index, lineStart, lineGeometry);
+            mLinesSize += LINE_ENTRY_SIZE;
+        }
+        mLinesSize += lineGeometry.getEstimatedSize();
+    }
+
+    /**
+     * Update estimated size of cache after geometry of cached line has been calculated or drawn.
+     *
+     * @param lineGeometry geometry of cached line
+     * @param oldSize      estimated size of geometry before it has been changed
+     */
+    void onLineGeometryChanged(@NonNull LineGeometry lineGeometry, int oldSize) {
+        mLinesSize += lineGeometry.getEstimatedSize() - oldSize;
+    }
+
+    /**
+     * Update cache after text has been edited. Lines before edited range and lines of next
+     * paragraphs keep their geometry, lines in between are dropped. Takes time proportional to
+     * the number of dropped lines, lines of next paragraphs are shifted lazily.
+     *
+     * @param start        start position of edited range
+     * @param before       length of replaced text
+     * @param count        length of new text
+     * @param paragraphEnd end of edited paragraph in new text
+     * @param generation   new generation of cache
+     */
+    void onTextChanged(int start, int before, int count, int paragraphEnd, int generation) {
+        if (generation - 1 != mEditGeneration) {
+            // cache has been invalidated since last edit, older lines are not valid anymore
+            mEditsStartGeneration = generation - 1;
+        }
+        mEditGeneration = generation;
+        final int shift = count - before;
+        // lines of next paragraphs are laid out independently, so they are only moved
+        final int to = findFirst(Math.max(start + before, paragraphEnd - shift + 1));
+        int from = findFirst(start);
+        // lines are ordered by start position, so only previous lines might end after edit start
+        while (from > 0 && getLineEnd(from - 1) > start) {
+            from--;
+        }
+        remove(from, to);
+        if (shift != 0) {
+            moveGap(from);
+            mGapShift += shift;
+        }
+    }
+
+    /**
+     * Drop paths and picture of line geometry and update estimated cache size.
+     */
+    void invalidateDrawing(@NonNull LineGeometry lineGeometry) {
+        final int pictureSize = lineGeometry.invalidateDrawing();
+        mPictureCacheSize -= pictureSize;
+        mLinesSize -= pictureSize;
+    }
+
+    /**
+     * Release picture of line geometry and update estimated cache size.
+     */
+    void releasePicture(@NonNull LineGeometry lineGeometry) {
+        final int pictureSize = lineGeometry.releasePicture();
+        mPictureCacheSize -= pictureSize;
+        mLinesSize -= pictureSize;
+    }
+
+    /**
+     * Get estimated size of state in bytes, including geometry of cached lines, their pictures
+     * and measurements cached by calculator. Takes constant time.
+     */
+    int getEstimatedSize() {
+        return BASE_SIZE + mLinesSize + mCalculator.getEstimatedSize();
+    }
+
+    int getPictureCacheSize() {
+        return mPictureCacheSize;
+    }
+
+    void addPictureCacheSize(int pictureSize) {
+        mPictureCacheSize += pictureSize;
+    }
+
+    /**
+     * Get current start position of cached line.
+     */
+    private int getLineStart(int index) {
+        return index < mGapIndex ? mLineStarts[index] : mLineStarts[index] + mGapShift;
+    }
+
+    /**
+     * Get current end position of cached line. Geometry of line might not be moved to current
+     * position yet.
+     */
+    private int getLineEnd(int index) {
+        final LineGeometry lineGeometry = mLinesGeometry[index];
+        return lineGeometry.getEnd() + getLineStart(index) - lineGeometry.getStart();
+    }
+
+    /**
+     * Find index of the first line that starts at or after specified position.
+     *
+     * @return index of line or {@link #mLinesCount} if there is no such line
+     */
+    private int findFirst(int position) {
+        int low = 0;
+        int high = mLinesCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (getLineStart(middle) < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find index of line with specified start position.
+     *
+     * @return index of line or inverted index of position where line must be inserted
+     */
+    private int indexOf(int lineStart) {
+        final int index = findFirst(lineStart);
+        return index < mLinesCount && getLineStart(index) == lineStart ? index : ~index;
+    }
+
+    private void insert(int index, int lineStart, @NonNull LineGeometry lineGeometry) {
+        moveGap(index);
+        if (mLinesCount == mLineStarts.length) {
+            final int capacity = Math.max(8, mLinesCount * 2);
+            final int[] lineStarts = new int[capacity];
+            final LineGeometry[] linesGeometry = new LineGeometry[capacity];
+            System.arraycopy(mLineStarts, 0, lineStarts, 0, mLinesCount);
+            System.arraycopy(mLinesGeometry, 0, linesGeometry, 0, mLinesCount);
+            mLineStarts = lineStarts;
+            mLinesGeometry = linesGeometry;
+        }
+        final int count = mLinesCount - index;
+        System.arraycopy(mLineStarts, index, mLineStarts, index + 1, count);
+        System.arraycopy(mLinesGeometry, index, mLinesGeometry, index + 1, count);
+        mLinesCount++;
+        // inserted line is placed right at the gap
+        mLineStarts[index] = lineStart - mGapShift;
+        mLinesGeometry[index] = lineGeometry;
+    }
+
+    /**
+     * Remove lines in range and release their pictures.
+     */
+    private void remove(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        moveGap(from);
+        for (int i = from; i < to; i++) {
+            final LineGeometry lineGeometry = mLinesGeometry[i];
+            mLinesSize -= LINE_ENTRY_SIZE + lineGeometry.getEstimatedSize();
+            mPictureCacheSize -= lineGeometry.releasePicture();
+        }
+        final int count = mLinesCount - to;
+        System.arraycopy(mLineStarts, to, mLineStarts, from, count);
+        System.arraycopy(mLinesGeometry, to, mLinesGeometry, from, count);
+        mLinesCount -= to - from;
+        // don't retain removed lines
+        for (int i = mLinesCount; i < mLinesCount + to - from; i++) {
+            mLinesGeometry[i] = null;
+        }
+    }
+
+    /**
+     * Move pending shift, so it applies to lines starting from specified index.
+     */
+    private void moveGap(int index) {
+        if (mGapShift == 0) {
+            mGapIndex = index;
+            return;
+        }
+        if (index > mGapIndex) {
+            for (int i = mGapIndex; i < index; i++) {
+                mLineStarts[i] += mGapShift;
+            }
+        } else {
+            for (int i = index; i < mGapIndex; i++) {
+                mLineStarts[i] -= mGapShift;
+            }
+        }
+        mGapIndex = index;
+    }
+
+    @NonNull
+    LineGeometryCalculator getCalculator() {
+        return mCalculator;
+    }
+
+    @NonNull
+    RectF getRectangle() {
+        return mRectangle;
+    }
+}
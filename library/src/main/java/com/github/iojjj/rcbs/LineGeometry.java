@@ -0,0 +1,387 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+
+/**
+ * Cached rectangles of backgrounds on a single line. Geometry stays valid while line range,
+ * line bounds, paint metrics and cache generation are the same as the ones it was computed for.
+ */
+final class LineGeometry {
+
+    /**
+     * Estimated size of line geometry without rectangles and paths in bytes.
+     */
+    private static final int BASE_SIZE = 128;
+
+    /**
+     * Estimated size of an empty path in bytes: Java object and its native counterpart.
+     */
+    private static final int PATH_BASE_SIZE = 96;
+
+    /**
+     * Estimated size of a single rounded rectangle added to path in bytes.
+     */
+    private static final int PATH_CONTOUR_SIZE = 160;
+
+    private int mStart;
+    private int mEnd;
+    private int mLeft;
+    private int mRight;
+    private int mTop;
+    private int mBaseline;
+    private float mTextSize;
+    private float mTextScaleX;
+    private float mTextSkewX;
+    private int mPaintFlags;
+    private Typeface mTypeface;
+    private int mGeneration;
+
+    /**
+     * Generation of drawing properties of span, such as colors, radius and padding, that
+     * paths, picture and padding of rectangles have been created for.
+     */
+    private int mDrawingGeneration;
+
+    /**
+     * Rectangles of backgrounds.
+     */
+    private final LineRects mRects = new LineRects();
+
+    /**
+     * Backgrounds merged into a single path per color. Paths are kept for reuse after reset.
+     */
+    private Path[] mPaths = new Path[1];
+    private int[] mPathColors = new int[1];
+    private int mPathsCount;
+    private boolean mHasPaths;
+
+    /**
+     * Corner radii of a single rectangle of outline, reused while paths are built.
+     */
+    private float[] mRadii;
+
+    /**
+     * Recorded backgrounds. Picture is recorded relative to its left and top position.
+     */
+    private Picture mPicture;
+    private float mPictureLeft;
+    private float mPictureTop;
+    private int mPictureSize;
+
+    /**
+     * Flag indicates that geometry is a part of snapshot and must not be modified.
+     */
+    private boolean mImmutable;
+
+    /**
+     * Check if geometry has been computed for the same line state.
+     *
+     * @return true if cached rectangles can be drawn as is, false otherwise
+     */
+    boolean matches(int start, int end, int left, int right, int top, int baseline,
+                    @NonNull Paint p, int generation) {
+        return mGeneration == generation
+                && mStart == start
+                && mEnd == end
+                && mLeft == left
+                && mRight == right
+                && mTop == top
+                && mBaseline == baseline
+                && mTextSize == p.getTextSize()
+                && mTextScaleX == p.getTextScaleX()
+                && mTextSkewX == p.getTextSkewX()
+                && mPaintFlags == p.getFlags()
+                && mTypeface == p.getTypeface();
+    }
+
+    /**
+     * Reset geometry and remember line state it will be computed for.
+     */
+    void reset(int start, int end, int left, int right, int top, int baseline,
+               @NonNull Paint p, int generation) {
+        if (mImmutable) {
+            throw new IllegalStateException("Geometry is immutable.");
+        }
+        mStart = start;
+        mEnd = end;
+        mLeft = left;
+        mRight = right;
+        mTop = top;
+        mBaseline = baseline;
+        mTextSize = p.getTextSize();
+        mTextScaleX = p.getTextScaleX();
+        mTextSkewX = p.getTextSkewX();
+        mPaintFlags = p.getFlags();
+        mTypeface = p.getTypeface();
+        mGeneration = generation;
+        mRects.clear(0, 0, false);
+        mPathsCount = 0;
+        mHasPaths = false;
+    }
+
+    /**
+     * Move geometry to another position in text after text before line has been edited.
+     * Rectangles stay the same, since content of line hasn't changed.
+     *
+     * @param shift      number of characters to shift by
+     * @param generation new generation of cache
+     */
+    void offset(int shift, int generation) {
+        if (mImmutable) {
+            throw new IllegalStateException("Geometry is immutable.");
+        }
+        mStart += shift;
+        mEnd += shift;
+        mGeneration = generation;
+    }
+
+    /**
+     * Drop paths and picture after drawing properties of span have been changed. Rectangles
+     * and widths of text parts are kept, so they can be laid out again without measuring text.
+     *
+     * @return estimated size of dropped picture in bytes
+     */
+    int invalidateDrawing() {
+        if (mImmutable) {
+            throw new IllegalStateException("Geometry is immutable.");
+        }
+        mHasPaths = false;
+        return releasePicture();
+    }
+
+    int getStart() {
+        return mStart;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    int getLineLeft() {
+        return mLeft;
+    }
+
+    int getLineRight() {
+        return mRight;
+    }
+
+    int getDrawingGeneration() {
+        return mDrawingGeneration;
+    }
+
+    void setDrawingGeneration(int drawingGeneration) {
+        if (mImmutable) {
+            throw new IllegalStateException("Geometry is immutable.");
+        }
+        mDrawingGeneration = drawingGeneration;
+    }
+
+    /**
+     * Get padding rectangles have been laid out with.
+     */
+    float getPadding() {
+        return mRects.getPadding();
+    }
+
+    int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Get rectangles of backgrounds to fill.
+     */
+    @NonNull
+    LineRects getRects() {
+        return mRects;
+    }
+
+    boolean isImmutable() {
+        return mImmutable;
+    }
+
+    /**
+     * Forbid further modifications of geometry.
+     */
+    void makeImmutable() {
+        mImmutable = true;
+    }
+
+    int size() {
+        return mRects.size();
+    }
+
+    boolean hasPicture() {
+        return mPicture != null;
+    }
+
+    /**
+     * Set recorded backgrounds. Picture is not a part of geometry, so it can be set even if
+     * geometry is immutable.
+     *
+     * @param picture     recorded backgrounds
+     * @param left        left position of picture
+     * @param top         top position of picture
+     * @param pictureSize estimated size of picture in bytes
+     */
+    void setPicture(@NonNull Picture picture, float left, float top, int pictureSize) {
+        mPicture = picture;
+        mPictureLeft = left;
+        mPictureTop = top;
+        mPictureSize = pictureSize;
+    }
+
+    /**
+     * Drop recorded backgrounds.
+     *
+     * @return estimated size of dropped picture in bytes
+     */
+    int releasePicture() {
+        final int pictureSize = mPictureSize;
+        mPicture = null;
+        mPictureSize = 0;
+        return pictureSize;
+    }
+
+    Picture getPicture() {
+        return mPicture;
+    }
+
+    float getPictureLeft() {
+        return mPictureLeft;
+    }
+
+    float getPictureTop() {
+        return mPictureTop;
+    }
+
+    int getColor(int index) {
+        return mRects.getColor(index);
+    }
+
+    int getRoundedCorners(int index) {
+        return mRects.getRoundedCorners(index);
+    }
+
+    float getLeft(int index) {
+        return mRects.getLeft(index);
+    }
+
+    float getTop(int index) {
+        return mRects.getTop(index);
+    }
+
+    float getRight(int index) {
+        return mRects.getRight(index);
+    }
+
+    float getBottom(int index) {
+        return mRects.getBottom(index);
+    }
+
+    boolean hasPaths() {
+        return mHasPaths;
+    }
+
+    /**
+     * Merge rectangles of the same color into paths.
+     *
+     * @param radius    corners radius
+     * @param rectangle rectangle that can be used for temporary calculations
+     * @param outline   true to round only corners where text parts start or end, so parts
+     *                  that wrap look like a single outline
+     */
+    void buildPaths(float radius, @NonNull RectF rectangle, boolean outline) {
+        if (mImmutable) {
+            throw new IllegalStateException("Geometry is immutable.");
+        }
+        mPathsCount = 0;
+        if (outline && mRadii == null) {
+            mRadii = new float[8];
+        }
+        final float[] radii = outline ? mRadii : null;
+        for (int i = 0, size = mRects.size(); i < size; i++) {
+            final int bgColor = mRects.getColor(i);
+            // skip transparent backgrounds
+            if (bgColor == 0) {
+                continue;
+            }
+            rectangle.set(getLeft(i), getTop(i), getRight(i), getBottom(i));
+            final Path path = getPathForColor(bgColor);
+            if (radii == null) {
+                path.addRoundRect(rectangle, radius, radius, Path.Direction.CW);
+                continue;
+            }
+            // radii are ordered as top-left, top-right, bottom-right, bottom-left
+            final int roundedCorners = getRoundedCorners(i);
+            final float leftRadius = (roundedCorners & LineRects.ROUNDED_LEFT) != 0 ? radius : 0;
+            final float rightRadius = (roundedCorners & LineRects.ROUNDED_RIGHT) != 0 ? radius : 0;
+            radii[0] = radii[1] = radii[6] = radii[7] = leftRadius;
+            radii[2] = radii[3] = radii[4] = radii[5] = rightRadius;
+            path.addRoundRect(rectangle, radii, Path.Direction.CW);
+        }
+        mHasPaths = true;
+    }
+
+    /**
+     * Get estimated size of geometry in bytes: rectangles, paths and recorded picture. Paths are
+     * rewound instead of being released, so all allocated paths are counted.
+     */
+    int getEstimatedSize() {
+        int size = BASE_SIZE + mRects.getEstimatedSize() + mPaths.length * 8;
+        for (Path path : mPaths) {
+            if (path == null) {
+                break;
+            }
+            size += PATH_BASE_SIZE;
+        }
+        if (mPaths[0] != null) {
+            size += mRects.size() * PATH_CONTOUR_SIZE;
+        }
+        return size + mPictureSize;
+    }
+
+    int getPathsCount() {
+        return mPathsCount;
+    }
+
+    @NonNull
+    Path getPath(int index) {
+        return mPaths[index];
+    }
+
+    int getPathColor(int index) {
+        return mPathColors[index];
+    }
+
+    @NonNull
+    private Path getPathForColor(int color) {
+        for (int i = 0; i < mPathsCount; i++) {
+            if (mPathColors[i] == color) {
+                return mPaths[i];
+            }
+        }
+        if (mPathsCount == mPaths.length) {
+            final Path[] paths = new Path[mPathsCount * 2];
+            System.arraycopy(mPaths, 0, paths, 0, mPathsCount);
+            mPaths = paths;
+            final int[] pathColors = new int[paths.length];
+            System.arraycopy(mPathColors, 0, pathColors, 0, mPathsCount);
+            mPathColors = pathColors;
+        }
+        Path path = mPaths[mPathsCount];
+        if (path == null) {
+            path = new Path();
+            mPaths[mPathsCount] = path;
+        } else {
+            path.rewind();
+        }
+        mPathColors[mPathsCount] = color;
+        mPathsCount++;
+        return path;
+    }
+}
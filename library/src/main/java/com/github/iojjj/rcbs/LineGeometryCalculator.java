@@ -0,0 +1,85 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+
+/**
+ * Calculator of backgrounds on a line of Android layout. Adapts paint and text of layout to
+ * {@link GeometryEngine}. Calculator keeps intermediate state of calculation, so each thread must
+ * use its own instance. Cached measurements are dropped when span's cache generation changes.
+ */
+final class LineGeometryCalculator {
+
+    private final GeometryEngine mEngine = new GeometryEngine();
+
+    /**
+     * Measurer of text parts.
+     */
+    private final SpannedTextMeasurer mTextMeasurer = new SpannedTextMeasurer();
+
+    /**
+     * Generation of span's cache used for last calculation.
+     */
+    private int mGeneration;
+
+    /**
+     * Calculate backgrounds on line.
+     *
+     * @param spec         parameters of backgrounds
+     * @param lineGeometry geometry to fill
+     * @param generation   generation of span's cache
+     */
+    void calculate(@NonNull GeometrySpec spec, @NonNull LineGeometry lineGeometry, @NonNull Paint p,
+                   int left, int right, int top, int baseline, @NonNull CharSequence text, int start,
+                   int end, int generation) {
+        if (mGeneration != generation) {
+            // spans of text might have been changed
+            mTextMeasurer.invalidate();
+            mGeneration = generation;
+        }
+        lineGeometry.reset(start, end, left, right, top, baseline, p, generation);
+        mTextMeasurer.bind(p, text);
+        try {
+            mEngine.calculate(spec, mTextMeasurer, text, start, end, left, right, top,
+                    baseline + p.descent(), lineGeometry.getRects());
+        } finally {
+            mTextMeasurer.unbind();
+        }
+    }
+
+    /**
+     * Lay out rectangles of line again with another padding without measuring text.
+     *
+     * @param spec         parameters of backgrounds
+     * @param lineGeometry geometry of line
+     * @param padding      new text padding
+     */
+    void relayout(@NonNull GeometrySpec spec, @NonNull LineGeometry lineGeometry, float padding) {
+        mEngine.layout(spec, padding, lineGeometry.getLineLeft(), lineGeometry.getLineRight(),
+                lineGeometry.getRects());
+    }
+
+    /**
+     * Update colors of backgrounds on line without measuring text.
+     *
+     * @param spec         parameters of backgrounds
+     * @param lineGeometry geometry of line
+     */
+    void updateColors(@NonNull GeometrySpec spec, @NonNull LineGeometry lineGeometry) {
+        mEngine.updateColors(spec, lineGeometry.getStart(), lineGeometry.getRects());
+    }
+
+    /**
+     * Get total number of text measurements made by this calculator.
+     */
+    int getMeasureTextCalls() {
+        return mTextMeasurer.getMeasureTextCalls();
+    }
+
+    /**
+     * Get estimated size of calculator in bytes, including measurements cached by its measurer.
+     */
+    int getEstimatedSize() {
+        return mTextMeasurer.getEstimatedSize();
+    }
+}
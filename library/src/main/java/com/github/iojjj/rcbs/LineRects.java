@@ -0,0 +1,214 @@
+package com.github.iojjj.rcbs;
+
+/**
+ * Rectangles of backgrounds on a single line. Besides rectangles, measured widths of text parts
+ * and bounds of text on line are stored, so rectangles can be laid out again with another
+ * padding without measuring text. Doesn't depend on Android framework.
+ */
+final class LineRects {
+
+    /**
+     * Flag indicates that left corners of rectangle are rounded.
+     */
+    static final int ROUNDED_LEFT = 1;
+
+    /**
+     * Flag indicates that right corners of rectangle are rounded.
+     */
+    static final int ROUNDED_RIGHT = 2;
+
+    private static final int RECT_SIZE = 4;
+
+    /**
+     * Estimated size of empty rectangles in bytes: object and its arrays.
+     */
+    private static final int BASE_SIZE = 160;
+
+    /**
+     * Estimated size of a single rectangle in bytes: its bounds, color, offset, width and
+     * rounded corners.
+     */
+    private static final int ITEM_SIZE = (RECT_SIZE + 4) * 4;
+
+    /**
+     * Rectangles stored as [left, top, right, bottom] sequences.
+     */
+    private float[] mRects = new float[RECT_SIZE];
+
+    /**
+     * Colors of backgrounds.
+     */
+    private int[] mColors = new int[1];
+
+    /**
+     * Offsets of text parts from start of line, so colors can be updated after colors of parts
+     * have been changed.
+     */
+    private int[] mOffsets = new int[1];
+
+    /**
+     * Widths of text parts on line in the order of text.
+     */
+    private float[] mWidths = new float[1];
+
+    /**
+     * Rounded corners of rectangles, combination of {@link #ROUNDED_LEFT} and {@link #ROUNDED_RIGHT}.
+     * Corners are not rounded on the side where text part continues on another line.
+     */
+    private int[] mRoundedCorners = new int[1];
+    private int mSize;
+
+    /**
+     * Top and bottom of text on line.
+     */
+    private float mTextTop;
+    private float mTextBottom;
+
+    /**
+     * Flag indicates that line is in RTL direction.
+     */
+    private boolean mRtl;
+
+    /**
+     * Padding rectangles have been laid out with.
+     */
+    private float mPadding;
+
+    /**
+     * Width of separators placed at the start of line before text.
+     */
+    private float mLeadingWidth;
+
+    /**
+     * Remove all rectangles and set bounds of text on line.
+     *
+     * @param textTop    top of text
+     * @param textBottom bottom of text
+     * @param rtl        true if line is in RTL direction
+     */
+    void clear(float textTop, float textBottom, boolean rtl) {
+        mSize = 0;
+        mTextTop = textTop;
+        mTextBottom = textBottom;
+        mRtl = rtl;
+        mLeadingWidth = 0;
+    }
+
+    /**
+     * Add background of text part. Rectangle of background is set by {@link #setRect}.
+     *
+     * @param color          color of background
+     * @param offset         offset of text part from start of line
+     * @param width          width of text part on line
+     * @param roundedCorners rounded corners of rectangle
+     */
+    void add(int color, int offset, float width, int roundedCorners) {
+        if (mSize == mColors.length) {
+            final int capacity = mSize * 2;
+            final int[] colors = new int[capacity];
+            System.arraycopy(mColors, 0, colors, 0, mSize);
+            mColors = colors;
+            final int[] offsets = new int[capacity];
+            System.arraycopy(mOffsets, 0, offsets, 0, mSize);
+            mOffsets = offsets;
+            final float[] rects = new float[capacity * RECT_SIZE];
+            System.arraycopy(mRects, 0, rects, 0, mSize * RECT_SIZE);
+            mRects = rects;
+            final float[] widths = new float[capacity];
+            System.arraycopy(mWidths, 0, widths, 0, mSize);
+            mWidths = widths;
+            final int[] allRoundedCorners = new int[capacity];
+            System.arraycopy(mRoundedCorners, 0, allRoundedCorners, 0, mSize);
+            mRoundedCorners = allRoundedCorners;
+        }
+        mColors[mSize] = color;
+        mOffsets[mSize] = offset;
+        mWidths[mSize] = width;
+        mRoundedCorners[mSize] = roundedCorners;
+        mSize++;
+    }
+
+    void setRect(int index, float left, float top, float right, float bottom) {
+        final int offset = index * RECT_SIZE;
+        mRects[offset] = left;
+        mRects[offset + 1] = top;
+        mRects[offset + 2] = right;
+        mRects[offset + 3] = bottom;
+    }
+
+    void setPadding(float padding) {
+        mPadding = padding;
+    }
+
+    float getPadding() {
+        return mPadding;
+    }
+
+    void setLeadingWidth(float leadingWidth) {
+        mLeadingWidth = leadingWidth;
+    }
+
+    float getLeadingWidth() {
+        return mLeadingWidth;
+    }
+
+    float getTextTop() {
+        return mTextTop;
+    }
+
+    float getTextBottom() {
+        return mTextBottom;
+    }
+
+    boolean isRtl() {
+        return mRtl;
+    }
+
+    /**
+     * Get estimated size of rectangles in bytes. Capacity of arrays is counted, because arrays
+     * never shrink.
+     */
+    int getEstimatedSize() {
+        return BASE_SIZE + mColors.length * ITEM_SIZE;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getColor(int index) {
+        return mColors[index];
+    }
+
+    void setColor(int index, int color) {
+        mColors[index] = color;
+    }
+
+    int getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    float getWidth(int index) {
+        return mWidths[index];
+    }
+
+    int getRoundedCorners(int index) {
+        return mRoundedCorners[index];
+    }
+
+    float getLeft(int index) {
+        return mRects[index * RECT_SIZE];
+    }
+
+    float getTop(int index) {
+        return mRects[index * RECT_SIZE + 1];
+    }
+
+    float getRight(int index) {
+        return mRects[index * RECT_SIZE + 2];
+    }
+
+    float getBottom(int index) {
+        return mRects[index * RECT_SIZE + 3];
+    }
+}
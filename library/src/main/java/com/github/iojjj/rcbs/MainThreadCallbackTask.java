@@ -0,0 +1,86 @@
+package com.github.iojjj.rcbs;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Task that delivers its result or error on the main thread. Errors are never rethrown on the
+ * thread of executor.
+ *
+ * @param <T> type of result
+ */
+abstract class MainThreadCallbackTask<T> extends FutureTask<T> {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Flag indicates that task has been cancelled. Unlike {@link #isCancelled()}, it's also
+     * set if task is cancelled after computation, but before result is delivered.
+     */
+    private volatile boolean mCancelled;
+
+    MainThreadCallbackTask(@NonNull Callable<T> callable) {
+        super(callable);
+    }
+
+    /**
+     * Called on the main thread with result of task unless task has been cancelled.
+     *
+     * @param result result of task
+     */
+    @UiThread
+    protected abstract void onResult(@NonNull T result);
+
+    /**
+     * Called on the main thread if task has failed unless task has been cancelled.
+     *
+     * @param error error thrown by task
+     */
+    @UiThread
+    protected abstract void onError(@NonNull Throwable error);
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        mCancelled = true;
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    protected void done() {
+        if (mCancelled) {
+            return;
+        }
+        // never throw from here, it would kill thread of executor
+        T result = null;
+        Throwable error = null;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            error = e.getCause() == null ? e : e.getCause();
+        } catch (InterruptedException | CancellationException e) {
+            error = e;
+        }
+        final T finalResult = result;
+        final Throwable finalError = error;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) {
+                    return;
+                }
+                if (finalError != null) {
+                    onError(finalError);
+                } else {
+                    onResult(finalResult);
+                }
+            }
+        });
+    }
+}
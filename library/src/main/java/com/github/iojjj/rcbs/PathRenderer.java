@@ -0,0 +1,36 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Renderer that merges backgrounds of the same color on a line into a single path, so a line is
+ * drawn with one draw call per color. Paths are cached by line geometry.
+ */
+final class PathRenderer implements BackgroundRenderer {
+
+    /**
+     * Flag indicates that only corners where text parts start or end are rounded.
+     */
+    private final boolean mOutline;
+
+    PathRenderer(boolean outline) {
+        mOutline = outline;
+    }
+
+    @Override
+    public void prepare(@NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        lineGeometry.buildPaths(radius, rectangle, mOutline);
+    }
+
+    @Override
+    public void draw(@NonNull Canvas c, @NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        if (!lineGeometry.hasPaths()) {
+            lineGeometry.buildPaths(radius, rectangle, mOutline);
+        }
+        for (int i = 0, size = lineGeometry.getPathsCount(); i < size; i++) {
+            c.drawPath(lineGeometry.getPath(i), BackgroundPaints.obtain(lineGeometry.getPathColor(i)));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Renderer that draws every background as a plain rectangle ignoring corners radius.
+ */
+final class RectRenderer implements BackgroundRenderer {
+
+    @Override
+    public void prepare(@NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        // nothing to prepare
+    }
+
+    @Override
+    public void draw(@NonNull Canvas c, @NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        for (int i = 0, size = lineGeometry.size(); i < size; i++) {
+            final int bgColor = lineGeometry.getColor(i);
+            // skip transparent backgrounds
+            if (bgColor != 0) {
+                c.drawRect(lineGeometry.getLeft(i), lineGeometry.getTop(i),
+                        lineGeometry.getRight(i), lineGeometry.getBottom(i), BackgroundPaints.obtain(bgColor));
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Background renderer enumeration.
+ */
+@IntDef({
+        RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT,
+        RoundedCornersBackgroundSpan.RENDERER_RECT,
+        RoundedCornersBackgroundSpan.RENDERER_PATHS,
+        RoundedCornersBackgroundSpan.RENDERER_CORNER_BITMAP,
+        RoundedCornersBackgroundSpan.RENDERER_OUTLINE
+})
+@Retention(RetentionPolicy.SOURCE)
+public @interface RendererType {
+}
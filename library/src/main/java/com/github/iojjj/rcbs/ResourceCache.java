@@ -0,0 +1,146 @@
+package com.github.iojjj.rcbs;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Build;
+import android.support.annotation.ColorRes;
+import android.support.annotation.DimenRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.StringRes;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+/**
+ * Cache of resolved resources used by builders. Values are valid for a single configuration and
+ * theme of application, cache is cleared as soon as any of them changes.
+ */
+final class ResourceCache {
+
+    private static final ResourceCache INSTANCE = new ResourceCache();
+
+    /**
+     * Dimensions by resource ID, stored as raw float bits.
+     */
+    private final SparseIntArray mDimensions = new SparseIntArray();
+
+    /**
+     * Colors by resource ID.
+     */
+    private final SparseIntArray mColors = new SparseIntArray();
+
+    /**
+     * Texts by resource ID.
+     */
+    private final SparseArray<CharSequence> mTexts = new SparseArray<>();
+
+    /**
+     * Resources values have been resolved from.
+     */
+    private Resources mResources;
+
+    /**
+     * Theme colors have been resolved with.
+     */
+    private Resources.Theme mTheme;
+
+    /**
+     * Copy of configuration values have been resolved for.
+     */
+    private Configuration mConfiguration;
+
+    private ResourceCache() {
+    }
+
+    @NonNull
+    static ResourceCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get dimension in pixels.
+     *
+     * @param context instance of Context
+     * @param id      dimen ID
+     */
+    synchronized float getDimension(@NonNull Context context, @DimenRes int id) {
+        validate(context);
+        final int index = mDimensions.indexOfKey(id);
+        if (index >= 0) {
+            return Float.intBitsToFloat(mDimensions.valueAt(index));
+        }
+        final float dimension = context.getResources().getDimension(id);
+        mDimensions.put(id, Float.floatToRawIntBits(dimension));
+        return dimension;
+    }
+
+    /**
+     * Get color styled for the context's theme.
+     *
+     * @param context instance of Context
+     * @param id      color ID
+     */
+    synchronized int getColor(@NonNull Context context, @ColorRes int id) {
+        validate(context);
+        final int index = mColors.indexOfKey(id);
+        if (index >= 0) {
+            return mColors.valueAt(index);
+        }
+        final int color;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            color = context.getColor(id);
+        } else {
+            //noinspection deprecation
+            color = context.getResources().getColor(id);
+        }
+        mColors.put(id, color);
+        return color;
+    }
+
+    /**
+     * Get localized text.
+     *
+     * @param context instance of Context
+     * @param id      string ID
+     */
+    @NonNull
+    synchronized CharSequence getText(@NonNull Context context, @StringRes int id) {
+        validate(context);
+        CharSequence text = mTexts.get(id);
+        if (text == null) {
+            text = context.getText(id);
+            mTexts.put(id, text);
+        }
+        return text;
+    }
+
+    /**
+     * Remove all cached values.
+     */
+    synchronized void clear() {
+        mDimensions.clear();
+        mColors.clear();
+        mTexts.clear();
+        mResources = null;
+        mTheme = null;
+        mConfiguration = null;
+    }
+
+    /**
+     * Clear cache if resources, theme or configuration of context have changed since values were
+     * resolved.
+     */
+    private void validate(@NonNull Context context) {
+        final Resources resources = context.getResources();
+        final Resources.Theme theme = context.getTheme();
+        final Configuration configuration = resources.getConfiguration();
+        if (mResources == resources && mTheme == theme && mConfiguration != null
+                && mConfiguration.diff(configuration) == 0) {
+            return;
+        }
+        clear();
+        mResources = resources;
+        mTheme = theme;
+        mConfiguration = new Configuration(configuration);
+    }
+}
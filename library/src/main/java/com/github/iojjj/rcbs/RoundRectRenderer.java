@@ -0,0 +1,35 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Renderer that draws every background as a rounded rectangle. Backgrounds are drawn as plain
+ * rectangles if radius is zero.
+ */
+final class RoundRectRenderer implements BackgroundRenderer {
+
+    @Override
+    public void prepare(@NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        // nothing to prepare
+    }
+
+    @Override
+    public void draw(@NonNull Canvas c, @NonNull LineGeometry lineGeometry, float radius, @NonNull RectF rectangle) {
+        for (int i = 0, size = lineGeometry.size(); i < size; i++) {
+            final int bgColor = lineGeometry.getColor(i);
+            // skip transparent backgrounds
+            if (bgColor == 0) {
+                continue;
+            }
+            rectangle.set(lineGeometry.getLeft(i), lineGeometry.getTop(i),
+                    lineGeometry.getRight(i), lineGeometry.getBottom(i));
+            if (radius > 0) {
+                c.drawRoundRect(rectangle, radius, radius, BackgroundPaints.obtain(bgColor));
+            } else {
+                c.drawRect(rectangle, BackgroundPaints.obtain(bgColor));
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.github.iojjj.rcbs;
+
+import android.content.Context;
+import android.support.annotation.DimenRes;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable visual style of {@link RoundedCornersBackgroundSpan}. Style can be created once and
+ * shared by any number of spans via {@link RoundedCornersBackgroundSpan.Builder#setStyle(RoundedBackgroundStyle)},
+ * so spans don't keep their own copies of drawing parameters.
+ */
+public final class RoundedBackgroundStyle {
+
+    private final float mRadius;
+    private final float mPadding;
+    private final float mPartsSpacing;
+    @TextAlignment
+    private final int mTextAlignment;
+    @RendererType
+    private final int mRendererType;
+    private final BackgroundRenderer mRenderer;
+    private final int mPictureCacheMaxSize;
+
+    RoundedBackgroundStyle(float radius, float padding, float partsSpacing, @TextAlignment int textAlignment,
+                           @RendererType int rendererType, int pictureCacheMaxSize) {
+        mRadius = radius;
+        mPadding = padding;
+        mPartsSpacing = partsSpacing;
+        mTextAlignment = textAlignment;
+        mRendererType = rendererType;
+        mRenderer = BackgroundRenderers.get(rendererType);
+        mPictureCacheMaxSize = pictureCacheMaxSize;
+    }
+
+    /**
+     * Get corners radius in pixels.
+     */
+    public float getCornersRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Get text padding in pixels.
+     */
+    public float getTextPadding() {
+        return mPadding;
+    }
+
+    /**
+     * Get spacing between text parts in pixels.
+     */
+    public float getPartsSpacing() {
+        return mPartsSpacing;
+    }
+
+    /**
+     * Get text alignment.
+     */
+    @TextAlignment
+    public int getTextAlignment() {
+        return mTextAlignment;
+    }
+
+    /**
+     * Get type of background renderer.
+     */
+    @RendererType
+    public int getRendererType() {
+        return mRendererType;
+    }
+
+    /**
+     * Get maximum estimated size of pictures recorded by every span with this style in bytes,
+     * shared by all layouts that draw the span. Zero if recording is disabled.
+     */
+    public int getPictureCacheSize() {
+        return mPictureCacheMaxSize;
+    }
+
+    @NonNull
+    BackgroundRenderer getRenderer() {
+        return mRenderer;
+    }
+
+    /**
+     * Width of separator between two parts.
+     */
+    float getSeparatorWidth() {
+        return 2 * mPadding + mPartsSpacing;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final RoundedBackgroundStyle that = (RoundedBackgroundStyle) o;
+        return Float.compare(that.mRadius, mRadius) == 0
+                && Float.compare(that.mPadding, mPadding) == 0
+                && Float.compare(that.mPartsSpacing, mPartsSpacing) == 0
+                && mTextAlignment == that.mTextAlignment
+                && mRendererType == that.mRendererType
+                && mPictureCacheMaxSize == that.mPictureCacheMaxSize;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(mRadius);
+        result = 31 * result + Float.floatToIntBits(mPadding);
+        result = 31 * result + Float.floatToIntBits(mPartsSpacing);
+        result = 31 * result + mTextAlignment;
+        result = 31 * result + mRendererType;
+        result = 31 * result + mPictureCacheMaxSize;
+        return result;
+    }
+
+    /**
+     * Builder for creating RoundedBackgroundStyle.
+     */
+    public static class Builder {
+
+        private final Context mContext;
+        private float mRadius;
+        private float mPadding;
+        private float mPartsSpacing;
+        @TextAlignment
+        private int mTextAlignment = RoundedCornersBackgroundSpan.ALIGN_START;
+        @RendererType
+        private int mRendererType = RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT;
+        private int mPictureCacheMaxSize;
+
+        /**
+         * Constructor.
+         *
+         * @param context instance of Context
+         */
+        public Builder(@NonNull Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        /**
+         * Set corners radius.
+         *
+         * @param radius corners radius in pixels.
+         */
+        public Builder setCornersRadius(float radius) {
+            mRadius = radius;
+            return this;
+        }
+
+        /**
+         * Set corners radius from resources.
+         *
+         * @param radiusRes dimen ID of radius
+         */
+        public Builder setCornersRadiusRes(@DimenRes int radiusRes) {
+            return setCornersRadius(ResourceCache.getInstance().getDimension(mContext, radiusRes));
+        }
+
+        /**
+         * Set text padding.
+         *
+         * @param padding text padding in pixels
+         */
+        public Builder setTextPadding(float padding) {
+            mPadding = padding;
+            return this;
+        }
+
+        /**
+         * Set text padding from resources.
+         *
+         * @param paddingRes dimen ID of padding
+         */
+        public Builder setTextPaddingRes(@DimenRes int paddingRes) {
+            return setTextPadding(ResourceCache.getInstance().getDimension(mContext, paddingRes));
+        }
+
+        /**
+         * Set spacing between text parts.
+         *
+         * @param spacing spacing in pixels
+         */
+        public Builder setPartsSpacing(float spacing) {
+            mPartsSpacing = spacing;
+            return this;
+        }
+
+        /**
+         * Set spacing between text parts.
+         *
+         * @param dimenId ID of dimension resource
+         */
+        public Builder setPartsSpacingRes(@DimenRes int dimenId) {
+            return setPartsSpacing(ResourceCache.getInstance().getDimension(mContext, dimenId));
+        }
+
+        /**
+         * Set text alignment.
+         *
+         * @param textAlignment text alignment
+         */
+        public Builder setTextAlignment(@TextAlignment int textAlignment) {
+            mTextAlignment = textAlignment;
+            return this;
+        }
+
+        /**
+         * Set type of background renderer.
+         *
+         * @param rendererType type of renderer
+         * @see RoundedCornersBackgroundSpan.Builder#setRendererType(int)
+         */
+        public Builder setRendererType(@RendererType int rendererType) {
+            mRendererType = rendererType;
+            return this;
+        }
+
+        /**
+         * Enable or disable batched rendering.
+         *
+         * @param batchedRendering true to draw backgrounds of the same color as a single path
+         * @see RoundedCornersBackgroundSpan.Builder#setBatchedRendering(boolean)
+         */
+        public Builder setBatchedRendering(boolean batchedRendering) {
+            return setRendererType(batchedRendering ? RoundedCornersBackgroundSpan.RENDERER_PATHS
+                    : RoundedCornersBackgroundSpan.RENDERER_ROUND_RECT);
+        }
+
+        /**
+         * Enable recording of backgrounds into pictures.
+         *
+         * @param maxSize maximum estimated size of pictures recorded by a single span in bytes or 0
+         *                to disable recording
+         * @see RoundedCornersBackgroundSpan.Builder#setPictureCacheSize(int)
+         */
+        public Builder setPictureCacheSize(@IntRange(from = 0) int maxSize) {
+            mPictureCacheMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Create style.
+         *
+         * @return immutable style
+         */
+        @NonNull
+        public RoundedBackgroundStyle build() {
+            return new RoundedBackgroundStyle(mRadius, mPadding, mPartsSpacing, mTextAlignment,
+                    mRendererType, mPictureCacheMaxSize);
+        }
+    }
+}
@@ -3,320 +3,605 @@ package com.github.iojjj.rcbs;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.RectF;
+import android.graphics.Picture;
+import android.graphics.Typeface;
 import android.os.Build;
+import android.os.Trace;
 import android.support.annotation.ColorInt;
 import android.support.annotation.ColorRes;
 import android.support.annotation.DimenRes;
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
+import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.SpannedString;
-import android.text.TextPaint;
 import android.text.TextUtils;
 import android.text.style.LineBackgroundSpan;
-import android.text.style.MetricAffectingSpan;
-import android.util.Pair;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of LineBackgroundSpan that adds rounded rectangle backgrounds to text.
+ * <p>
+ * Per-draw state is kept separately for every layout width and paint that draw the span, and
+ * separators between parts are immutable, so a built spanned string can be cached and shown by
+ * many TextViews at once.
  */
 public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
 
     /**
      * Align text at start (left for LTR and right for RTL).
      */
-    public static final int ALIGN_START = 0;
+    public static final int ALIGN_START = GeometrySpec.ALIGN_START;
 
     /**
      * Align text at end (right for LTR and left for RTL).
      */
-    public static final int ALIGN_END = 1;
+    public static final int ALIGN_END = GeometrySpec.ALIGN_END;
 
     /**
      * Align text at center.
      */
-    public static final int ALIGN_CENTER = 2;
+    public static final int ALIGN_CENTER = GeometrySpec.ALIGN_CENTER;
 
     /**
-     * Rectangle used for drawing background.
+     * Draw every background as a rounded rectangle. Default renderer.
      */
-    private final RectF mRectangle = new RectF();
+    public static final int RENDERER_ROUND_RECT = 0;
 
     /**
-     * Paint used for drawing background.
+     * Draw every background as a plain rectangle ignoring corners radius. The cheapest renderer.
      */
-    private final Paint mPaint = new Paint();
+    public static final int RENDERER_RECT = 1;
 
     /**
-     * List of backgrounds to draw.
+     * Merge backgrounds of the same color on a line into a single path and draw it by one draw
+     * call. Reduces number of draw operations for texts with many parts and few colors.
      */
-    private final List<BackgroundHolder> mBackgroundHolders = new ArrayList<>();
+    public static final int RENDERER_PATHS = 2;
 
     /**
-     * Corners radius of background.
+     * Draw corners of backgrounds from cached bitmaps and fill the rest with plain rectangles.
+     * Avoids rasterizing rounded rectangles, which is slow on software canvas.
      */
-    private final float mRadius;
+    public static final int RENDERER_CORNER_BITMAP = 3;
 
     /**
-     * Text padding.
+     * Same as {@link #RENDERER_PATHS}, but corners are rounded only where text parts start or end,
+     * so parts that wrap to next lines look like a single outline.
      */
-    private final float mPadding;
+    public static final int RENDERER_OUTLINE = 4;
 
     /**
-     * Text alignment.
+     * Estimated size of an empty picture in bytes.
      */
-    @TextAlignment
-    private final int mTextAlignment;
+    private static final int PICTURE_BASE_SIZE = 256;
 
     /**
-     * Flag indicates that text is in RTL direction.
+     * Estimated size of a single recorded draw operation in bytes.
      */
-    private final boolean mRtlText;
+    private static final int PICTURE_OPERATION_SIZE = 64;
 
     /**
-     * Separator between two parts.
+     * Character placed between text parts. It's replaced by {@link SpacingSpan}.
      */
-    private final float mSeparatorWidth;
+    static final char SEPARATOR = ' ';
+
+    private static final String TRACE_DRAW_BACKGROUND = "RCBS.drawBackground";
+    private static final String TRACE_BUILD = "RCBS.build";
 
     /**
-     * List that holds data required to properly measure text on the line that contains multiple
-     * {@link MetricAffectingSpan} effects.
+     * Metrics of all spans.
      */
-    private final List<LineDataHolder> mHoldersOnLine = new ArrayList<>();
+    private static final SpanMetrics METRICS = new SpanMetrics();
 
-    private RoundedCornersBackgroundSpan(@NonNull Builder builder) {
-        mPaint.setAntiAlias(true);
-        mRadius = builder.mRadius;
-        mPadding = builder.mPadding;
-        mSeparatorWidth = builder.mSeparatorWidth;
-        mTextAlignment = builder.mTextAlignment;
-        for (final Pair<CharSequence, BackgroundHolder> textPart : builder.mTextParts) {
-            if (textPart.second != null) {
-                mBackgroundHolders.add(textPart.second);
-            }
-        }
-        final char firstChar = builder.mTextParts.get(0).first.charAt(0);
-        mRtlText = firstChar >= 0x5D0 && firstChar <= 0x6ff;
+    /**
+     * Listener of metrics. Metrics are collected only if listener is set.
+     */
+    private static volatile SpanMetrics.Listener sMetricsListener;
+
+    /**
+     * Maximum number of layout states kept per thread.
+     */
+    private static final int MAX_LAYOUT_STATES = 4;
+
+    /**
+     * Parameters of backgrounds geometry.
+     */
+    private final GeometrySpec mGeometrySpec;
+
+    /**
+     * Visual style of backgrounds, possibly shared with other spans.
+     */
+    private final RoundedBackgroundStyle mStyle;
+
+    /**
+     * States of layouts that draw this span, most recently used first. Layout isn't passed to
+     * {@link #drawBackground}, so states are keyed by width and paint metrics of layout, which
+     * determine geometry of its lines. States are owned by span, so they are collected together
+     * with it. List is also used as a lock of states, which is never contended unless span is
+     * drawn by many threads at once.
+     */
+    private final List<LayoutState> mLayoutStates = new ArrayList<>(MAX_LAYOUT_STATES);
+
+    /**
+     * Generation of cached geometry. Cached lines computed for older generations are recomputed.
+     * Generation is read by background threads that precompute geometry.
+     */
+    private volatile int mGeneration;
+
+    /**
+     * Generation of drawing properties: colors of parts, corners radius and text padding. Cached
+     * lines drawn with older generation are redrawn from cached widths of text parts without
+     * measuring text.
+     */
+    private volatile int mDrawingGeneration;
+
+    /**
+     * Corners radius. Initially taken from style, but can be animated.
+     */
+    private volatile float mRadius;
+
+    /**
+     * Estimated size of memory retained by layout states. Updated under lock of layout states
+     * whenever they are changed, so it can be read by {@link BackgroundSpanCache} without lock.
+     */
+    private volatile int mRetainedSize;
+
+    /**
+     * Flag indicates that span is shared via {@link BackgroundSpanCache}, so its drawing
+     * properties can't be changed.
+     */
+    private boolean mShared;
+
+    private RoundedCornersBackgroundSpan(@NonNull RoundedBackgroundStyle style, @NonNull int[] colors,
+                                         @NonNull int[] starts, @NonNull int[] ends, @NonNull DirectionRuns directions) {
+        mStyle = style;
+        mRadius = style.getCornersRadius();
+        mGeometrySpec = new GeometrySpec(new BackgroundHoldersIndex(colors, starts, ends), style.getTextPadding(),
+                style.getSeparatorWidth(), style.getTextAlignment(), directions);
     }
 
     @Override
     public void drawBackground(Canvas c, Paint p, int left, int right, int top, int baseline,
                                int bottom, CharSequence text, int start, int end, int lnum) {
-        mHoldersOnLine.clear();
-        for (BackgroundHolder backgroundHolder : mBackgroundHolders) {
-            if (start > backgroundHolder.getEnd() || end < backgroundHolder.getStart()) {
-                continue;
-            }
-            final CharSequence part = text.subSequence(start, end);
-            final int trimmedLength = TextUtils.getTrimmedLength(part);
-            final String trimmedText = part.toString().trim();
-            // skip empty parts
-            if (TextUtils.isEmpty(trimmedText)) {
-                continue;
+        final SpanMetrics.Listener metricsListener = sMetricsListener;
+        final long startTime = metricsListener == null ? 0 : beginTrace(TRACE_DRAW_BACKGROUND);
+        // backgrounds can't go beyond line bounds by more than padding
+        final float padding = mGeometrySpec.getPadding();
+        if (c.quickReject(left - padding, top - padding, right + padding, bottom + padding, Canvas.EdgeType.AA)) {
+            // line is outside of visible area, don't measure or build anything
+            if (metricsListener != null) {
+                METRICS.addCulledLine(endTrace(startTime));
             }
-            // do not add background to lines that ends with spaces
-            if (trimmedLength != part.length()) {
-                final int trimmedLengthStart = getTrimmedLengthStart(part);
-                final int trimmedLengthEnd = getTrimmedLengthEnd(part, trimmedLengthStart);
-                start = start + trimmedLengthStart;
-                end = end - trimmedLengthEnd;
-            }
-            final int startInText = start < backgroundHolder.getStart() ? backgroundHolder.getStart() : start;
-            final int endInText = end > backgroundHolder.getEnd() ? backgroundHolder.getEnd() : end;
-            // skip empty parts
-            if (startInText == endInText) {
-                continue;
-            }
-            updateHoldersOnLine(p, left, right, top, baseline, text, backgroundHolder,
-                    startInText, endInText);
+            return;
+        }
+        synchronized (mLayoutStates) {
+            drawLine(c, p, left, right, top, baseline, text, start, end, padding, metricsListener, startTime);
+            updateRetainedSize();
         }
-        drawBackgrounds(c, left, right);
     }
 
     /**
-     * Update list of holders on line.
-     *
-     * @param backgroundHolder holder of text part
-     * @param startInText      start position in text
-     * @param endInText        end position in text
-     */
-    private void updateHoldersOnLine(@NonNull Paint p, int left, int right, int top, int baseline,
-                                     @NonNull CharSequence text, @NonNull BackgroundHolder backgroundHolder,
-                                     int startInText, int endInText) {
-        final TextPaint textPaint = getTextPaint(p, text, startInText, endInText);
-        final float prevTextWidth = getPrevTextWidth(text);
-        float curTextWidth;
-        try {
-            curTextWidth = textPaint.measureText(text, startInText, endInText);
-        } catch (IndexOutOfBoundsException e) {
-            // skip drawing. This crashes on Android 4.3 (potentially on all 4.x) devices
-            // without `continue` it will draw an empty rectangle with rounded corners (if padding has been set)
+     * Draw backgrounds of visible line. Must be called under lock of layout states.
+     */
+    private void drawLine(@NonNull Canvas c, @NonNull Paint p, int left, int right, int top, int baseline,
+                          @NonNull CharSequence text, int start, int end, float padding,
+                          @Nullable SpanMetrics.Listener metricsListener, long startTime) {
+        final LayoutState layoutState = obtainLayoutState(right - left, p.getTextSize(), p.getTypeface());
+        final int generation = mGeneration;
+        final int drawingGeneration = mDrawingGeneration;
+        LineGeometry lineGeometry = layoutState.getLineGeometry(start);
+        if (lineGeometry != null && lineGeometry.matches(start, end, left, right, top, baseline, p, generation)
+                && updateDrawing(layoutState, lineGeometry, padding, drawingGeneration)) {
+            // paths or picture might be created while drawing
+            final int lineSize = lineGeometry.getEstimatedSize();
+            drawBackgrounds(c, layoutState, lineGeometry);
+            layoutState.onLineGeometryChanged(lineGeometry, lineSize);
+            if (metricsListener != null) {
+                METRICS.addLine(lineGeometry.size(), 0, true, endTrace(startTime));
+                metricsListener.onLineDrawn(METRICS);
+            }
             return;
         }
-        float l = left;
-        float r = right;
-        if (mRtlText) {
-            r -= prevTextWidth;
-            l = r - curTextWidth;
+        if (lineGeometry == null || lineGeometry.isImmutable()) {
+            // precomputed geometry belongs to snapshot and can't be reused
+            lineGeometry = new LineGeometry();
+            layoutState.putLineGeometry(start, lineGeometry);
         } else {
-            l += prevTextWidth;
-            r = l + curTextWidth;
-        }
-        final float rectLeft = l - mPadding;
-        final float rectTop = top - mPadding;
-        final float rectRight = r + mPadding;
-        final float rectBottom = baseline + p.descent() + mPadding;
-        final LineDataHolder lineDataHolder = new LineDataHolder.Builder()
-                .setTextPaint(textPaint)
-                .setStartIntText(startInText)
-                .setEndIntText(endInText)
-                .setLeft(rectLeft)
-                .setRight(rectRight)
-                .setTop(rectTop)
-                .setBottom(rectBottom)
-                .setBgHolder(backgroundHolder)
-                .build();
-        mHoldersOnLine.add(lineDataHolder);
-    }
-
-    /**
-     * Get width of previous text on line.
+            layoutState.releasePicture(lineGeometry);
+        }
+        final int lineSize = lineGeometry.getEstimatedSize();
+        final LineGeometryCalculator calculator = layoutState.getCalculator();
+        final int measureTextCalls = calculator.getMeasureTextCalls();
+        calculator.calculate(mGeometrySpec, lineGeometry, p, left, right, top, baseline, text, start, end, generation);
+        lineGeometry.setDrawingGeneration(drawingGeneration);
+        drawBackgrounds(c, layoutState, lineGeometry);
+        layoutState.onLineGeometryChanged(lineGeometry, lineSize);
+        if (metricsListener != null) {
+            METRICS.addLine(lineGeometry.size(), calculator.getMeasureTextCalls() - measureTextCalls,
+                    false, endTrace(startTime));
+            metricsListener.onLineDrawn(METRICS);
+        }
+    }
+
+    /**
+     * Set listener of metrics of all spans. Metrics are collected only while listener is set,
+     * otherwise spans don't spend any time on them. Drawing and building are also wrapped in
+     * {@link Trace} sections while listener is set.
+     *
+     * @param listener listener of metrics or null to stop collecting metrics
+     */
+    public static void setMetricsListener(@Nullable SpanMetrics.Listener listener) {
+        sMetricsListener = listener;
+    }
+
+    /**
+     * Begin trace section.
      *
-     * @param text some text
-     * @return width of previous text on line
-     */
-    private float getPrevTextWidth(CharSequence text) {
-        float prevTextWidth = 0;
-        if (!mHoldersOnLine.isEmpty()) {
-            for (LineDataHolder holder : mHoldersOnLine) {
-                prevTextWidth += holder.getTextPaint().measureText(text, holder.getStartIntText(), holder.getEndIntText());
+     * @return start time in nanoseconds
+     */
+    private static long beginTrace(@NonNull String sectionName) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(sectionName);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * End trace section.
+     *
+     * @param startTime start time in nanoseconds
+     * @return duration of section in nanoseconds
+     */
+    private static long endTrace(long startTime) {
+        final long duration = System.nanoTime() - startTime;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        return duration;
+    }
+
+    /**
+     * Clear resources resolved by builders. Resources are cached per configuration and theme of
+     * application and cache is cleared automatically when they are replaced, so call this method
+     * only if current theme has been modified in place, for example by
+     * {@link android.content.res.Resources.Theme#applyStyle(int, boolean)}.
+     */
+    public static void clearResourceCache() {
+        ResourceCache.getInstance().clear();
+    }
+
+    /**
+     * Invalidate cached backgrounds. Cache is invalidated automatically if line bounds or
+     * paint metrics change, so call this method only if metric affecting spans of text have been
+     * changed without changing text layout.
+     */
+    public void invalidateCache() {
+        mGeneration++;
+    }
+
+    /**
+     * Update backgrounds after text has been edited. Cached lines that haven't been affected by
+     * edit are kept.
+     *
+     * @param text   edited text
+     * @param start  start position of edited range
+     * @param before length of replaced text
+     * @param count  length of new text
+     */
+    void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+        final DirectionRuns directions = mGeometrySpec.getDirections();
+        boolean directionsChanged = false;
+        if (!directions.isLtr() || DirectionRuns.requiresBidi(text, start, start + count)) {
+            final DirectionRuns newDirections = DirectionRuns.compute(text);
+            mGeometrySpec.setDirections(newDirections);
+            directionsChanged = !directions.isLtr() || !newDirections.isLtr();
+        }
+        final int generation = ++mGeneration;
+        int paragraphEnd = TextUtils.indexOf(text, '\n', start + count);
+        if (paragraphEnd == -1) {
+            paragraphEnd = text.length();
+        }
+        synchronized (mLayoutStates) {
+            if (directionsChanged) {
+                mLayoutStates.clear();
+            } else {
+                for (int i = 0, size = mLayoutStates.size(); i < size; i++) {
+                    mLayoutStates.get(i).onTextChanged(start, before, count, paragraphEnd, generation);
+                }
             }
-            prevTextWidth += mHoldersOnLine.size() * mSeparatorWidth;
+            updateRetainedSize();
         }
-        return prevTextWidth;
     }
 
     /**
-     * Get new text paint.
+     * Get number of text parts.
+     */
+    public int getPartsCount() {
+        return mGeometrySpec.getBackgroundHolders().size();
+    }
+
+    /**
+     * Get background color of text part.
+     *
+     * @param index index of text part
+     */
+    @ColorInt
+    public int getPartColor(int index) {
+        return mGeometrySpec.getBackgroundHolders().getColor(index);
+    }
+
+    /**
+     * Change background color of text part. Text isn't measured again, so this method is cheap
+     * enough to be called on every frame of animation. View that shows text must be invalidated
+     * to draw new color.
+     *
+     * @param index   index of text part
+     * @param bgColor background color or 0 for text part without background
+     */
+    public void setPartColor(int index, @ColorInt int bgColor) {
+        checkNotShared();
+        mGeometrySpec.getBackgroundHolders().setColor(index, bgColor);
+        mDrawingGeneration++;
+    }
+
+    /**
+     * Get current corners radius.
+     */
+    public float getCornersRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Change corners radius. Text isn't measured again, so this method is cheap enough to be
+     * called on every frame of animation. View that shows text must be invalidated to draw
+     * new radius.
+     *
+     * @param radius corners radius
+     */
+    public void setCornersRadius(float radius) {
+        checkNotShared();
+        mRadius = radius;
+        mDrawingGeneration++;
+    }
+
+    /**
+     * Get current text padding.
+     */
+    public float getTextPadding() {
+        return mGeometrySpec.getPadding();
+    }
+
+    /**
+     * Change text padding. Backgrounds are laid out again from cached widths of text parts
+     * without measuring text, so this method is cheap enough to be called on every frame of
+     * animation. Width of separators between parts isn't changed, so text isn't laid out again.
+     * View that shows text must be invalidated to draw new padding.
      *
-     * @param p           init paint object
-     * @param text        some text
-     * @param startInText start position in text
-     * @param endInText   end position in text
-     * @return new instance of TextPaint
+     * @param padding text padding
+     */
+    public void setTextPadding(float padding) {
+        checkNotShared();
+        mGeometrySpec.setPadding(padding);
+        mDrawingGeneration++;
+    }
+
+    /**
+     * Put precomputed geometry of lines to cache.
+     *
+     * @param width         width of layout
+     * @param textSize      text size of layout's paint
+     * @param typeface      typeface of layout's paint
+     * @param linesGeometry geometry by start position of line
+     */
+    void attachGeometry(int width, float textSize, Typeface typeface,
+                        @NonNull SparseArray<LineGeometry> linesGeometry) {
+        synchronized (mLayoutStates) {
+            final LayoutState layoutState = obtainLayoutState(width, textSize, typeface);
+            for (int i = 0, size = linesGeometry.size(); i < size; i++) {
+                layoutState.putLineGeometry(linesGeometry.keyAt(i), linesGeometry.valueAt(i));
+            }
+            updateRetainedSize();
+        }
+    }
+
+    /**
+     * Get estimated size of memory retained by span for drawing in bytes: cached geometry of
+     * lines, paths and recorded pictures of all layouts that draw the span. Size grows as lines
+     * are drawn. Size is tracked while lines are drawn, so it's returned without lock.
+     */
+    int getRetainedSize() {
+        return mRetainedSize;
+    }
+
+    /**
+     * Update estimated size of memory retained by layout states. Must be called under lock of
+     * layout states after they have been changed.
+     */
+    private void updateRetainedSize() {
+        int size = 0;
+        for (int i = 0, count = mLayoutStates.size(); i < count; i++) {
+            size += mLayoutStates.get(i).getEstimatedSize();
+        }
+        mRetainedSize = size;
+    }
+
+    /**
+     * Get state of layout with specified width and paint. Must be called under lock of layout
+     * states.
      */
     @NonNull
-    private TextPaint getTextPaint(Paint p, CharSequence text, int startInText, int endInText) {
-        final TextPaint textPaint = new TextPaint(p);
-        if (text instanceof SpannedString) {
-            SpannedString spanned = (SpannedString) text;
-            final MetricAffectingSpan[] spans = spanned.getSpans(startInText, endInText, MetricAffectingSpan.class);
-            if (spans.length > 0) {
-                for (MetricAffectingSpan span : spans) {
-                    span.updateMeasureState(textPaint);
+    private LayoutState obtainLayoutState(int width, float textSize, Typeface typeface) {
+        final List<LayoutState> layoutStates = mLayoutStates;
+        for (int i = 0, size = layoutStates.size(); i < size; i++) {
+            final LayoutState layoutState = layoutStates.get(i);
+            if (layoutState.matches(width, textSize, typeface)) {
+                if (i > 0) {
+                    layoutStates.remove(i);
+                    layoutStates.add(0, layoutState);
                 }
+                return layoutState;
             }
         }
-        return textPaint;
+        if (layoutStates.size() == MAX_LAYOUT_STATES) {
+            layoutStates.remove(MAX_LAYOUT_STATES - 1);
+        }
+        final LayoutState layoutState = new LayoutState(width, textSize, typeface);
+        layoutStates.add(0, layoutState);
+        return layoutState;
+    }
+
+    private void checkNotShared() {
+        if (mShared) {
+            throw new IllegalStateException("Span is shared via BackgroundSpanCache and can't be changed.");
+        }
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    int getDrawingGeneration() {
+        return mDrawingGeneration;
     }
 
     /**
-     * Calculate alignment fix value.
+     * Get visual style of backgrounds.
+     */
+    @NonNull
+    public RoundedBackgroundStyle getStyle() {
+        return mStyle;
+    }
+
+    @NonNull
+    GeometrySpec getGeometrySpec() {
+        return mGeometrySpec;
+    }
+
+    /**
+     * Update drawing of cached line after drawing properties have been changed.
      *
-     * @return alignment fix value
-     */
-    private float calculateAlignmentFix(int left, int right) {
-        if (mHoldersOnLine.isEmpty()) {
-            return 0;
-        }
-        float fLeft = left;
-        float fRight = right;
-        final float mostLeft;
-        final float mostRight;
-        if (mRtlText) {
-            mostLeft = mHoldersOnLine.get(mHoldersOnLine.size() - 1).getLeft();
-            mostRight = mHoldersOnLine.get(0).getRight();
-        } else {
-            mostLeft = mHoldersOnLine.get(0).getLeft();
-            mostRight = mHoldersOnLine.get(mHoldersOnLine.size() - 1).getRight();
-        }
-        if (mostLeft < left) {
-            fLeft = mostLeft;
+     * @param layoutState       state of layout
+     * @param lineGeometry      cached geometry of line
+     * @param padding           current text padding
+     * @param drawingGeneration current generation of drawing properties
+     * @return true if cached geometry can be drawn, false if it must be calculated again
+     */
+    private boolean updateDrawing(@NonNull LayoutState layoutState, @NonNull LineGeometry lineGeometry,
+                                  float padding, int drawingGeneration) {
+        if (lineGeometry.getDrawingGeneration() == drawingGeneration) {
+            return true;
         }
-        if (mostRight > fRight) {
-            fRight = mostRight;
+        if (lineGeometry.isImmutable()) {
+            // precomputed geometry belongs to snapshot and can't be changed
+            return false;
         }
-        final float width = fRight - fLeft;
-        final float consumedWidth = mostRight - mostLeft;
-        if (mTextAlignment == ALIGN_CENTER) {
-            return (width - consumedWidth + mPadding) / 2;
-        } else if (mTextAlignment == ALIGN_END) {
-            return width - consumedWidth + mPadding;
+        layoutState.invalidateDrawing(lineGeometry);
+        final LineGeometryCalculator calculator = layoutState.getCalculator();
+        calculator.updateColors(mGeometrySpec, lineGeometry);
+        if (lineGeometry.getPadding() != padding) {
+            calculator.relayout(mGeometrySpec, lineGeometry, padding);
         }
-        return 0;
+        lineGeometry.setDrawingGeneration(drawingGeneration);
+        return true;
     }
 
     /**
      * Draw backgrounds.
      */
-    private void drawBackgrounds(@NonNull Canvas c, int left, int right) {
-        final float alignmentFix = calculateAlignmentFix(left, right);
-        for (LineDataHolder lineDataHolder : mHoldersOnLine) {
-            final BackgroundHolder backgroundHolder = lineDataHolder.getBgHolder();
-            float rectLeft = lineDataHolder.getLeft();
-            float rectRight = lineDataHolder.getRight();
-            if (mRtlText) {
-                rectLeft -= alignmentFix;
-                rectRight -= alignmentFix;
-            } else {
-                rectLeft += alignmentFix;
-                rectRight += alignmentFix;
-            }
-            final float rectTop = lineDataHolder.getTop();
-            final float rectBottom = lineDataHolder.getBottom();
-            // skip transparent backgrounds
-            if (backgroundHolder.getBgColor() != 0) {
-                mRectangle.set(rectLeft, rectTop, rectRight, rectBottom);
-                mPaint.setColor(backgroundHolder.getBgColor());
-                c.drawRoundRect(mRectangle, mRadius, mRadius, mPaint);
-            }
+    private void drawBackgrounds(@NonNull Canvas c, @NonNull LayoutState layoutState,
+                                 @NonNull LineGeometry lineGeometry) {
+        if (mStyle.getPictureCacheSize() > 0 && canDrawPicture(c)
+                && (lineGeometry.hasPicture() || recordPicture(layoutState, lineGeometry))) {
+            final int saveCount = c.save();
+            c.translate(lineGeometry.getPictureLeft(), lineGeometry.getPictureTop());
+            c.drawPicture(lineGeometry.getPicture());
+            c.restoreToCount(saveCount);
+            return;
         }
+        drawBackgroundsDirectly(c, layoutState, lineGeometry);
+    }
+
+    /**
+     * Check if canvas supports drawing of pictures.
+     */
+    private static boolean canDrawPicture(@NonNull Canvas c) {
+        // hardware accelerated canvas supports pictures starting from Android M
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+                || !c.isHardwareAccelerated();
     }
 
     /**
-     * Get number of space characters from the beginning of text.
+     * Record backgrounds of line into picture if there is enough space in picture cache of span.
+     * Cache is shared by all layouts that draw the span. Must be called under lock of layout
+     * states.
      *
-     * @param text any text
-     * @return number of space characters from text beginning
+     * @param layoutState  state of layout
+     * @param lineGeometry geometry of line
+     * @return true if picture has been recorded, false otherwise
      */
-    private int getTrimmedLengthStart(@NonNull CharSequence text) {
-        int len = text.length();
-        int start = 0;
-        while (start < len && text.charAt(start) <= ' ') {
-            start++;
+    private boolean recordPicture(@NonNull LayoutState layoutState, @NonNull LineGeometry lineGeometry) {
+        final int size = lineGeometry.size();
+        if (size == 0) {
+            return false;
         }
-        return start;
+        final int pictureSize = PICTURE_BASE_SIZE + size * PICTURE_OPERATION_SIZE;
+        if (getPictureCacheSize() + pictureSize > mStyle.getPictureCacheSize()) {
+            return false;
+        }
+        float left = lineGeometry.getLeft(0);
+        float top = lineGeometry.getTop(0);
+        float right = lineGeometry.getRight(0);
+        float bottom = lineGeometry.getBottom(0);
+        for (int i = 1; i < size; i++) {
+            left = Math.min(left, lineGeometry.getLeft(i));
+            top = Math.min(top, lineGeometry.getTop(i));
+            right = Math.max(right, lineGeometry.getRight(i));
+            bottom = Math.max(bottom, lineGeometry.getBottom(i));
+        }
+        final Picture picture = new Picture();
+        final Canvas canvas = picture.beginRecording((int) Math.ceil(right - left), (int) Math.ceil(bottom - top));
+        canvas.translate(-left, -top);
+        drawBackgroundsDirectly(canvas, layoutState, lineGeometry);
+        picture.endRecording();
+        lineGeometry.setPicture(picture, left, top, pictureSize);
+        layoutState.addPictureCacheSize(pictureSize);
+        return true;
     }
 
     /**
-     * Get number of space characters from the end of text.
-     *
-     * @param text  any text
-     * @param start number of space characters from beginning of text
-     * @return number of space characters from the end of text
+     * Get estimated size of pictures recorded for all layouts that draw the span. Must be called
+     * under lock of layout states.
      */
-    private int getTrimmedLengthEnd(@NonNull CharSequence text, int start) {
-        int end = text.length();
-        while (end > start && text.charAt(end - 1) <= ' ') {
-            end--;
+    private int getPictureCacheSize() {
+        int size = 0;
+        for (int i = 0, count = mLayoutStates.size(); i < count; i++) {
+            size += mLayoutStates.get(i).getPictureCacheSize();
         }
-        return text.length() - end;
+        return size;
+    }
+
+    /**
+     * Draw backgrounds without recording.
+     */
+    private void drawBackgroundsDirectly(@NonNull Canvas c, @NonNull LayoutState layoutState,
+                                         @NonNull LineGeometry lineGeometry) {
+        mStyle.getRenderer().draw(c, lineGeometry, mRadius, layoutState.getRectangle());
     }
 
     /**
@@ -324,14 +609,25 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
      */
     public static class Builder {
 
+        /**
+         * Default number of text parts builder has room for.
+         */
+        private static final int DEFAULT_CAPACITY = 8;
+
         private final Context mContext;
         private float mRadius;
         private float mPadding;
         private float mPartsSpacing;
-        private float mSeparatorWidth;
-        private final List<Pair<CharSequence, BackgroundHolder>> mTextParts = new ArrayList<>();
+        private CharSequence[] mPartTexts = new CharSequence[DEFAULT_CAPACITY];
+        @ColorInt
+        private int[] mPartColors = new int[DEFAULT_CAPACITY];
+        private int mPartsCount;
         @TextAlignment
         private int mTextAlignment = ALIGN_START;
+        @RendererType
+        private int mRendererType = RENDERER_ROUND_RECT;
+        private int mPictureCacheMaxSize;
+        private RoundedBackgroundStyle mStyle;
 
         /**
          * Constructor.
@@ -349,6 +645,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          */
         public Builder setCornersRadius(float radius) {
             mRadius = radius;
+            mStyle = null;
             return this;
         }
 
@@ -359,6 +656,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          */
         public Builder setTextPadding(float padding) {
             mPadding = padding;
+            mStyle = null;
             return this;
         }
 
@@ -368,7 +666,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param paddingRes dimen ID of padding
          */
         public Builder setTextPaddingRes(@DimenRes int paddingRes) {
-            return setTextPadding(mContext.getResources().getDimension(paddingRes));
+            return setTextPadding(ResourceCache.getInstance().getDimension(mContext, paddingRes));
         }
 
         /**
@@ -377,7 +675,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param radiusRes dimen ID of radius
          */
         public Builder setCornersRadiusRes(@DimenRes int radiusRes) {
-            return setCornersRadius(mContext.getResources().getDimension(radiusRes));
+            return setCornersRadius(ResourceCache.getInstance().getDimension(mContext, radiusRes));
         }
 
         /**
@@ -387,9 +685,52 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param bgColor  background color
          */
         public Builder addTextPart(@NonNull CharSequence textPart, @ColorInt int bgColor) {
-            final BackgroundHolder backgroundHolder = new BackgroundHolder(bgColor);
-            final Pair<CharSequence, BackgroundHolder> pair = Pair.create(textPart, backgroundHolder);
-            mTextParts.add(pair);
+            ensureCapacity(mPartsCount + 1);
+            mPartTexts[mPartsCount] = textPart;
+            mPartColors[mPartsCount] = bgColor;
+            mPartsCount++;
+            return this;
+        }
+
+        /**
+         * Add multiple text parts with backgrounds.
+         *
+         * @param textParts text parts
+         * @param bgColors  background colors of text parts
+         */
+        public Builder addTextParts(@NonNull CharSequence[] textParts, @NonNull @ColorInt int[] bgColors) {
+            if (textParts.length != bgColors.length) {
+                throw new IllegalArgumentException("Number of text parts and colors must be the same.");
+            }
+            ensureCapacity(mPartsCount + textParts.length);
+            System.arraycopy(textParts, 0, mPartTexts, mPartsCount, textParts.length);
+            System.arraycopy(bgColors, 0, mPartColors, mPartsCount, bgColors.length);
+            mPartsCount += textParts.length;
+            return this;
+        }
+
+        /**
+         * Make sure builder has room for specified number of text parts, so adding them doesn't
+         * grow internal arrays.
+         *
+         * @param partsCount expected number of text parts
+         */
+        public Builder ensureCapacity(int partsCount) {
+            if (partsCount > mPartTexts.length) {
+                final int capacity = Math.max(partsCount, mPartTexts.length * 2);
+                mPartTexts = Arrays.copyOf(mPartTexts, capacity);
+                mPartColors = Arrays.copyOf(mPartColors, capacity);
+            }
+            return this;
+        }
+
+        /**
+         * Remove all text parts, so builder can be reused for another text. Style options are
+         * kept, as well as the style shared by spans built before.
+         */
+        public Builder reset() {
+            Arrays.fill(mPartTexts, 0, mPartsCount, null);
+            mPartsCount = 0;
             return this;
         }
 
@@ -400,7 +741,8 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param bgColorRes color ID of background
          */
         public Builder addTextPart(@StringRes int textRes, @ColorRes int bgColorRes) {
-            return addTextPart(mContext.getText(textRes), getColor(mContext, bgColorRes));
+            return addTextPart(ResourceCache.getInstance().getText(mContext, textRes),
+                    ResourceCache.getInstance().getColor(mContext, bgColorRes));
         }
 
         /**
@@ -418,7 +760,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param textRes string ID of text part
          */
         public Builder addTextPart(@StringRes int textRes) {
-            return addTextPart(mContext.getText(textRes));
+            return addTextPart(ResourceCache.getInstance().getText(mContext, textRes));
         }
 
         /**
@@ -428,6 +770,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          */
         public Builder setTextAlignment(@TextAlignment int textAlignment) {
             mTextAlignment = textAlignment;
+            mStyle = null;
             return this;
         }
 
@@ -438,6 +781,7 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          */
         public Builder setPartsSpacing(float spacing) {
             mPartsSpacing = spacing;
+            mStyle = null;
             return this;
         }
 
@@ -447,59 +791,321 @@ public final class RoundedCornersBackgroundSpan implements LineBackgroundSpan {
          * @param dimenId ID of dimension resource
          */
         public Builder setPartsSpacingRes(@DimenRes int dimenId) {
-            return setPartsSpacing(mContext.getResources().getDimension(dimenId));
+            return setPartsSpacing(ResourceCache.getInstance().getDimension(mContext, dimenId));
+        }
+
+        /**
+         * Set type of renderer that draws backgrounds. Renderers differ in cost and look, so
+         * low-end devices can use a cheaper one. Default renderer is {@link #RENDERER_ROUND_RECT}.
+         *
+         * @param rendererType type of renderer
+         */
+        public Builder setRendererType(@RendererType int rendererType) {
+            mRendererType = rendererType;
+            mStyle = null;
+            return this;
+        }
+
+        /**
+         * Enable or disable batched rendering. If enabled, backgrounds of the same color on a line
+         * are merged into a single path and drawn by one draw call. It reduces number of draw
+         * operations for texts with many parts and few colors. Disabled by default.
+         *
+         * @param batchedRendering true to draw backgrounds of the same color as a single path
+         * @see #RENDERER_PATHS
+         */
+        public Builder setBatchedRendering(boolean batchedRendering) {
+            return setRendererType(batchedRendering ? RENDERER_PATHS : RENDERER_ROUND_RECT);
+        }
+
+        /**
+         * Enable recording of backgrounds into {@link android.graphics.Picture}s. Recorded lines
+         * are replayed on next draws until line layout or cache generation changes, which suits
+         * texts that never change after layout. Pictures are recorded until their estimated size
+         * reaches specified limit, the rest of lines are drawn as usual. Limit is applied per span:
+         * pictures recorded for all layouts that draw the same span share it, so a span shown in
+         * several views never retains more than the limit. Recording is ignored on
+         * hardware accelerated canvas before Android M. Disabled by default.
+         *
+         * @param maxSize maximum estimated size of pictures recorded by the span in bytes or 0 to disable recording
+         */
+        public Builder setPictureCacheSize(@IntRange(from = 0) int maxSize) {
+            mPictureCacheMaxSize = maxSize;
+            mStyle = null;
+            return this;
+        }
+
+        /**
+         * Set style of backgrounds. Style replaces corners radius, text padding, parts spacing,
+         * text alignment and rendering options set before. Spans built with the same style share
+         * it instead of keeping their own copies. Changing any of these options afterwards
+         * detaches builder from style.
+         *
+         * @param style style of backgrounds
+         */
+        public Builder setStyle(@NonNull RoundedBackgroundStyle style) {
+            mRadius = style.getCornersRadius();
+            mPadding = style.getTextPadding();
+            mPartsSpacing = style.getPartsSpacing();
+            mTextAlignment = style.getTextAlignment();
+            mRendererType = style.getRendererType();
+            mPictureCacheMaxSize = style.getPictureCacheSize();
+            mStyle = style;
+            return this;
         }
 
         /**
-         * Create a spanned string that contains RoundedCornersBackgroundSpan.
+         * Create a spanned string that contains RoundedCornersBackgroundSpan. Every call creates
+         * independent spans, so this method can be called from any thread as long as builder
+         * is not modified concurrently.
          *
          * @return spanned string
          */
         public Spannable build() {
-            if (mTextParts.isEmpty()) {
+            final SpanMetrics.Listener metricsListener = sMetricsListener;
+            final long startTime = metricsListener == null ? 0 : beginTrace(TRACE_BUILD);
+            final SpannableStringBuilder text = newText();
+            setSpans(text, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            endBuildTrace(metricsListener, startTime);
+            return text;
+        }
+
+        /**
+         * Create a spanned string that contains RoundedCornersBackgroundSpan or get the same
+         * string from cache if it has already been built from equal text parts, colors and style.
+         * Returned string is immutable and may be shown by many views at once, so drawing
+         * properties of its span can't be changed. Text parts with spans of their own are not
+         * cached.
+         *
+         * @param cache cache of built strings
+         * @return spanned string
+         */
+        @NonNull
+        public Spanned build(@NonNull BackgroundSpanCache cache) {
+            final int partsCount = mPartsCount;
+            final String[] texts = new String[partsCount];
+            for (int i = 0; i < partsCount; i++) {
+                final CharSequence partText = mPartTexts[i];
+                if (partText instanceof Spanned) {
+                    // spans of parts can't be compared, so text isn't cached
+                    return build();
+                }
+                texts[i] = partText.toString();
+            }
+            final BackgroundSpanCache.Key key = new BackgroundSpanCache.Key(texts,
+                    Arrays.copyOf(mPartColors, partsCount), obtainStyle());
+            Spanned text = cache.get(key);
+            if (text == null) {
+                final SpanMetrics.Listener metricsListener = sMetricsListener;
+                final long startTime = metricsListener == null ? 0 : beginTrace(TRACE_BUILD);
+                final SpannableStringBuilder builtText = newText();
+                final RoundedCornersBackgroundSpan span = setSpans(builtText, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                span.mShared = true;
+                text = new SpannedString(builtText);
+                cache.put(key, text, span);
+                endBuildTrace(metricsListener, startTime);
+            }
+            return text;
+        }
+
+        /**
+         * Create an editable text that contains RoundedCornersBackgroundSpan. Text parts of
+         * created text can be inserted, removed and changed by returned editor without building
+         * text again.
+         *
+         * @return editor of text parts
+         * @see BackgroundPartsEditor
+         */
+        @NonNull
+        public BackgroundPartsEditor buildEditable() {
+            final SpanMetrics.Listener metricsListener = sMetricsListener;
+            final long startTime = metricsListener == null ? 0 : beginTrace(TRACE_BUILD);
+            final SpannableStringBuilder text = newText();
+            // inclusive span keeps covering text when parts are added at its edges
+            final RoundedCornersBackgroundSpan span = setSpans(text, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+            final BackgroundPartsEditor editor = new BackgroundPartsEditor(text, span);
+            endBuildTrace(metricsListener, startTime);
+            return editor;
+        }
+
+        /**
+         * Create text of all parts separated by separator characters.
+         */
+        @NonNull
+        private SpannableStringBuilder newText() {
+            if (mPartsCount == 0) {
                 throw new IllegalArgumentException("You must specify at least one text part.");
             }
-            boolean first = true;
-            final SpannableStringBuilder builder = new SpannableStringBuilder();
-            mSeparatorWidth = 2 * mPadding + mPartsSpacing;
-            for (final Pair<CharSequence, BackgroundHolder> stringPart : mTextParts) {
-                if (first) {
-                    first = false;
-                } else {
-                    final int start = builder.length();
-                    builder.append(" ");
-                    final SpacingSpan spacingSpan = SpacingSpan.newInstance(mSeparatorWidth);
-                    builder.setSpan(spacingSpan, start, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            final int partsCount = mPartsCount;
+            final CharSequence[] partTexts = mPartTexts;
+            // each part except the first one is preceded by a separator
+            int length = partsCount - 1;
+            for (int i = 0; i < partsCount; i++) {
+                length += partTexts[i].length();
+            }
+            final StringBuilder chars = new StringBuilder(length);
+            for (int i = 0; i < partsCount; i++) {
+                if (i > 0) {
+                    chars.append(SEPARATOR);
+                }
+                chars.append(partTexts[i]);
+            }
+            final SpannableStringBuilder text = new SpannableStringBuilder(chars);
+            int start = 0;
+            for (int i = 0; i < partsCount; i++) {
+                final CharSequence partText = partTexts[i];
+                if (partText instanceof Spanned) {
+                    TextUtils.copySpansFrom((Spanned) partText, 0, partText.length(), Object.class, text, start);
                 }
-                stringPart.second.setStart(builder.length());
-                builder.append(stringPart.first);
-                stringPart.second.setEnd(builder.length());
+                start += partText.length() + 1;
             }
-            final RoundedCornersBackgroundSpan span = new RoundedCornersBackgroundSpan(this);
-            builder.setSpan(span, 0, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-            return builder;
+            return text;
         }
-    }
 
-    /**
-     * Returns a color associated with a particular resource ID
-     * <p>
-     * Starting in {@link android.os.Build.VERSION_CODES#M}, the returned
-     * color will be styled for the specified Context's theme.
-     *
-     * @param id The desired resource identifier, as generated by the aapt
-     *           tool. This integer encodes the package, type, and resource
-     *           entry. The value 0 is an invalid identifier.
-     * @return A single color value in the form 0xAARRGGBB.
-     * @throws android.content.res.Resources.NotFoundException if the given ID
-     *                                                         does not exist.
-     */
-    private static int getColor(@NonNull Context context, @ColorRes int id) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            return context.getColor(id);
-        } else {
-            //noinspection deprecation
-            return context.getResources().getColor(id);
+        /**
+         * Set separators and RoundedCornersBackgroundSpan to text created by {@link #newText()}.
+         *
+         * @param text      text of parts
+         * @param spanFlags flags of RoundedCornersBackgroundSpan
+         * @return created span
+         */
+        @NonNull
+        private RoundedCornersBackgroundSpan setSpans(@NonNull SpannableStringBuilder text, int spanFlags) {
+            final int partsCount = mPartsCount;
+            final RoundedBackgroundStyle style = obtainStyle();
+            final int[] starts = new int[partsCount];
+            final int[] ends = new int[partsCount];
+            int start = 0;
+            for (int i = 0; i < partsCount; i++) {
+                if (i > 0) {
+                    final SpacingSpan spacingSpan = SpacingSpan.newInstance(style.getSeparatorWidth());
+                    text.setSpan(spacingSpan, start, start + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    start++;
+                }
+                final int end = start + mPartTexts[i].length();
+                starts[i] = start;
+                ends[i] = end;
+                start = end;
+            }
+            // builder can be reused, so colors are copied
+            final RoundedCornersBackgroundSpan span = new RoundedCornersBackgroundSpan(style,
+                    Arrays.copyOf(mPartColors, partsCount),
+                    starts, ends, DirectionRuns.compute(text));
+            text.setSpan(span, 0, text.length(), spanFlags);
+            return span;
+        }
+
+        private static void endBuildTrace(@Nullable SpanMetrics.Listener metricsListener, long startTime) {
+            if (metricsListener != null) {
+                METRICS.addBuild(endTrace(startTime));
+                metricsListener.onBuilt(METRICS);
+            }
+        }
+
+        /**
+         * Create a spanned string that contains RoundedCornersBackgroundSpan using executor.
+         * Builder must not be modified until callback is invoked.
+         *
+         * @param executor executor that will build spanned string
+         * @param callback callback that receives spanned string on the main thread
+         * @return future that can be used to cancel building
+         */
+        @NonNull
+        public Future<Spannable> buildAsync(@NonNull Executor executor, @NonNull final Callback callback) {
+            final MainThreadCallbackTask<Spannable> task = new MainThreadCallbackTask<Spannable>(newBuildTask()) {
+                @Override
+                protected void onResult(@NonNull Spannable result) {
+                    callback.onBuilt(result);
+                }
+
+                @Override
+                protected void onError(@NonNull Throwable error) {
+                    callback.onError(error);
+                }
+            };
+            executor.execute(task);
+            return task;
+        }
+
+        /**
+         * Create spanned strings of multiple builders in parallel. Builders must not be modified
+         * until this method returns.
+         *
+         * @param builders builders of spanned strings
+         * @param executor executor that will build spanned strings
+         * @return spanned strings in the same order as builders
+         * @throws InterruptedException if current thread has been interrupted while waiting
+         */
+        @WorkerThread
+        @NonNull
+        public static List<Spannable> buildAll(@NonNull List<Builder> builders,
+                                               @NonNull ExecutorService executor) throws InterruptedException {
+            final List<Callable<Spannable>> tasks = new ArrayList<>(builders.size());
+            for (Builder builder : builders) {
+                tasks.add(builder.newBuildTask());
+            }
+            final List<Future<Spannable>> futures = executor.invokeAll(tasks);
+            final List<Spannable> spannables = new ArrayList<>(futures.size());
+            for (Future<Spannable> future : futures) {
+                try {
+                    spannables.add(future.get());
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            return spannables;
+        }
+
+        /**
+         * Get style of built spans. Style is created once and shared by all spans built until
+         * builder's style options change.
+         */
+        @NonNull
+        private RoundedBackgroundStyle obtainStyle() {
+            RoundedBackgroundStyle style = mStyle;
+            if (style == null) {
+                style = new RoundedBackgroundStyle(mRadius, mPadding, mPartsSpacing, mTextAlignment,
+                        mRendererType, mPictureCacheMaxSize);
+                mStyle = style;
+            }
+            return style;
+        }
+
+        @NonNull
+        private Callable<Spannable> newBuildTask() {
+            return new Callable<Spannable>() {
+                @Override
+                public Spannable call() throws Exception {
+                    return build();
+                }
+            };
+        }
+
+        /**
+         * Callback that receives asynchronously built spanned string.
+         */
+        public interface Callback {
+
+            /**
+             * Called on the main thread when spanned string has been built.
+             *
+             * @param spannable spanned string that contains RoundedCornersBackgroundSpan
+             */
+            @UiThread
+            void onBuilt(@NonNull Spannable spannable);
+
+            /**
+             * Called on the main thread if spanned string couldn't be built, for example if
+             * builder has no text parts.
+             *
+             * @param error error thrown by builder
+             */
+            @UiThread
+            void onError(@NonNull Throwable error);
         }
     }
-}
\ No newline at end of file
+}
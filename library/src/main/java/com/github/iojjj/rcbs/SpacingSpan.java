@@ -5,57 +5,48 @@ import android.graphics.Paint;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.text.style.LineBackgroundSpan;
 import android.text.style.ReplacementSpan;
-import android.util.SparseIntArray;
 
 /**
- * Span that will be placed between text parts to simulate spacing between them.
+ * Span that will be placed between text parts to simulate spacing between them. Span is immutable:
+ * whether separator starts or ends a line is derived from text passed to
+ * {@link #getSize(Paint, CharSequence, int, int, Paint.FontMetricsInt)}, so the same text can be
+ * laid out by any number of layouts at once.
+ * <p>
+ * Size of span is requested before text is wrapped, so only explicit line breaks are known. Width
+ * of a separator at the end of a wrapped line is not taken into account by layouts. Since API 23
+ * layouts may also wrap a line right before a separator, then separator keeps its width at the
+ * start of the line and {@link GeometryEngine} shifts backgrounds of the line by it.
  */
-class SpacingSpan extends ReplacementSpan implements LineBackgroundSpan {
+class SpacingSpan extends ReplacementSpan {
 
-    private final float mSeparatorWidth;
-    private final SparseIntArray mLineCoordinates;
-    private int mLineCounter;
-    private int mSizeCounter;
+    /**
+     * Width of separator between two parts.
+     */
+    private final float mWidth;
 
-    static SpacingSpan newInstance(float separatorWidth) {
-        return new SpacingSpan(separatorWidth);
+    static SpacingSpan newInstance(float width) {
+        return new SpacingSpan(width);
     }
 
-    private SpacingSpan(float separatorWidth) {
-        mSeparatorWidth = separatorWidth;
-        mLineCoordinates = new SparseIntArray();
+    private SpacingSpan(float width) {
+        mWidth = width;
     }
 
     @Override
     public int getSize(@NonNull Paint paint, CharSequence text, @IntRange(from = 0) int start,
                        @IntRange(from = 0) int end, @Nullable Paint.FontMetricsInt fm) {
-        mLineCounter = 0; // reset counter just in case
-        final int coordinates = mLineCoordinates.get(mSizeCounter);
-        final int lineStart = coordinates & 0xFFFF;
-        final int lineEnd = (coordinates >> 16) & 0xFFFF;
-        if (lineStart == start || lineEnd == end) {
+        if (text != null && GeometryEngine.isSeparatorOnLineEdge(text, start, end)) {
             // don't draw empty space if it's placed in the beginning or in the end of line
             return 0;
         }
-        return (int) mSeparatorWidth;
+        return (int) mWidth;
     }
 
     @Override
     public void draw(@NonNull Canvas canvas, CharSequence text, @IntRange(from = 0) int start,
                      @IntRange(from = 0) int end, float x, int top, int y, int bottom,
                      @NonNull Paint paint) {
-        // increment must be called here, because getSize called multiple times
-        mSizeCounter++;
-    }
-
-    @Override
-    public void drawBackground(Canvas c, Paint p, int left, int right, int top, int baseline,
-                               int bottom, CharSequence text, int start, int end, int lnum) {
-        mSizeCounter = 0; // reset counter just in case
-        final int coordinates = start | (end << 16); // encode two integers into one to skip array or object creation
-        mLineCoordinates.put(mLineCounter, coordinates);
-        mLineCounter++;
+        // nothing to draw
     }
 }
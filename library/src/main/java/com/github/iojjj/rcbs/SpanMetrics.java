@@ -0,0 +1,143 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Cumulative metrics of {@link RoundedCornersBackgroundSpan}s. Metrics are collected only while
+ * listener is set via {@link RoundedCornersBackgroundSpan#setMetricsListener(Listener)}.
+ */
+public final class SpanMetrics {
+
+    private long mLinesDrawn;
+    private long mSegmentsDrawn;
+    private long mMeasureTextCalls;
+    private long mCacheHits;
+    private long mCacheMisses;
+    private long mLinesCulled;
+    private long mDrawBackgroundNanos;
+    private long mBuilds;
+    private long mBuildNanos;
+
+    SpanMetrics() {
+    }
+
+    /**
+     * Get number of lines drawn by spans.
+     */
+    public synchronized long getLinesDrawn() {
+        return mLinesDrawn;
+    }
+
+    /**
+     * Get number of backgrounds drawn on all lines.
+     */
+    public synchronized long getSegmentsDrawn() {
+        return mSegmentsDrawn;
+    }
+
+    /**
+     * Get number of text measurements.
+     */
+    public synchronized long getMeasureTextCalls() {
+        return mMeasureTextCalls;
+    }
+
+    /**
+     * Get number of lines drawn from cache.
+     */
+    public synchronized long getCacheHits() {
+        return mCacheHits;
+    }
+
+    /**
+     * Get number of lines which backgrounds have been calculated before drawing.
+     */
+    public synchronized long getCacheMisses() {
+        return mCacheMisses;
+    }
+
+    /**
+     * Get number of lines skipped because they are outside of canvas clip.
+     */
+    public synchronized long getLinesCulled() {
+        return mLinesCulled;
+    }
+
+    /**
+     * Get total time spent in {@link RoundedCornersBackgroundSpan#drawBackground} in nanoseconds.
+     */
+    public synchronized long getDrawBackgroundNanos() {
+        return mDrawBackgroundNanos;
+    }
+
+    /**
+     * Get number of built spanned strings.
+     */
+    public synchronized long getBuilds() {
+        return mBuilds;
+    }
+
+    /**
+     * Get total time spent in {@link RoundedCornersBackgroundSpan.Builder#build()} in nanoseconds.
+     */
+    public synchronized long getBuildNanos() {
+        return mBuildNanos;
+    }
+
+    /**
+     * Reset all metrics to zero.
+     */
+    public synchronized void reset() {
+        mLinesDrawn = 0;
+        mSegmentsDrawn = 0;
+        mMeasureTextCalls = 0;
+        mCacheHits = 0;
+        mCacheMisses = 0;
+        mLinesCulled = 0;
+        mDrawBackgroundNanos = 0;
+        mBuilds = 0;
+        mBuildNanos = 0;
+    }
+
+    synchronized void addLine(int segments, int measureTextCalls, boolean cacheHit, long nanos) {
+        mLinesDrawn++;
+        mSegmentsDrawn += segments;
+        mMeasureTextCalls += measureTextCalls;
+        if (cacheHit) {
+            mCacheHits++;
+        } else {
+            mCacheMisses++;
+        }
+        mDrawBackgroundNanos += nanos;
+    }
+
+    synchronized void addCulledLine(long nanos) {
+        mLinesCulled++;
+        mDrawBackgroundNanos += nanos;
+    }
+
+    synchronized void addBuild(long nanos) {
+        mBuilds++;
+        mBuildNanos += nanos;
+    }
+
+    /**
+     * Listener of metrics updates.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the drawing thread after a line has been drawn.
+         *
+         * @param metrics cumulative metrics
+         */
+        void onLineDrawn(@NonNull SpanMetrics metrics);
+
+        /**
+         * Called on the building thread after a spanned string has been built.
+         *
+         * @param metrics cumulative metrics
+         */
+        void onBuilt(@NonNull SpanMetrics metrics);
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.iojjj.rcbs;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures text that might contain {@link MetricAffectingSpan}s. Text is split into runs by span
+ * transitions, every run is measured with a paint updated by spans that cover it. Runs and paints
+ * are cached, runs with the same combination of spans share the same paint.
+ * <p>
+ * Measurer must be bound to paint and text via {@link #bind(Paint, CharSequence)} before measuring.
+ */
+final class SpannedTextMeasurer implements TextMeasurer {
+
+    /**
+     * Maximum number of cached runs. Runs are resolved again once cache has been cleared.
+     */
+    private static final int MAX_RUNS_COUNT = 1024;
+
+    /**
+     * Estimated size of measurer without runs and paints in bytes.
+     */
+    private static final int BASE_SIZE = 256;
+
+    /**
+     * Estimated size of a single cached run in bytes: run object and its entry in cache.
+     */
+    private static final int RUN_SIZE = 32;
+
+    /**
+     * Estimated size of paint for combination of spans in bytes: Java object and its native
+     * counterpart.
+     */
+    private static final int PAINT_SIZE = 256;
+
+    /**
+     * Paint of text without metric affecting spans.
+     */
+    private final TextPaint mBasePaint = new TextPaint();
+
+    /**
+     * Resolved runs by their start position in text. Number of runs is limited by
+     * {@link #MAX_RUNS_COUNT}.
+     */
+    private final SparseArray<Run> mRuns = new SparseArray<>();
+
+    /**
+     * Paints for distinct combinations of spans.
+     */
+    private final List<SpansPaint> mSpansPaints = new ArrayList<>();
+
+    private boolean mHasBasePaint;
+    private float mTextSize;
+    private float mTextScaleX;
+    private float mTextSkewX;
+    private int mPaintFlags;
+    private Typeface mTypeface;
+
+    /**
+     * Text that is measured.
+     */
+    private CharSequence mText;
+
+    /**
+     * Total number of text measurements.
+     */
+    private int mMeasureTextCalls;
+
+    /**
+     * Bind measurer to paint and text.
+     *
+     * @param p    paint of text
+     * @param text some text
+     */
+    void bind(@NonNull Paint p, @NonNull CharSequence text) {
+        updateBasePaint(p);
+        mText = text;
+    }
+
+    /**
+     * Release text, so measurer doesn't keep reference to it between measurements.
+     */
+    void unbind() {
+        mText = null;
+    }
+
+    @Override
+    public float measure(int start, int end) {
+        final CharSequence text = mText;
+        if (!(text instanceof Spanned)) {
+            mMeasureTextCalls++;
+            return mBasePaint.measureText(text, start, end);
+        }
+        final Spanned spanned = (Spanned) text;
+        float width = 0;
+        int runStart = start;
+        while (runStart < end) {
+            Run run = mRuns.get(runStart);
+            if (run == null) {
+                run = resolveRun(spanned, runStart, end);
+                if (mRuns.size() == MAX_RUNS_COUNT) {
+                    mRuns.clear();
+                }
+                mRuns.put(runStart, run);
+            }
+            // run might be resolved for a longer range, but spans are the same within it
+            final int runEnd = run.mEnd < end ? run.mEnd : end;
+            width += run.mPaint.measureText(text, runStart, runEnd);
+            mMeasureTextCalls++;
+            runStart = runEnd;
+        }
+        return width;
+    }
+
+    int getMeasureTextCalls() {
+        return mMeasureTextCalls;
+    }
+
+    /**
+     * Get estimated size of measurer in bytes, including cached runs and paints.
+     */
+    int getEstimatedSize() {
+        return BASE_SIZE + mRuns.size() * RUN_SIZE + mSpansPaints.size() * PAINT_SIZE;
+    }
+
+    /**
+     * Drop resolved runs. Must be called if spans of text have been changed.
+     */
+    void invalidate() {
+        mRuns.clear();
+        mSpansPaints.clear();
+    }
+
+    /**
+     * Update base paint if paint of text has been changed since last measurement.
+     */
+    private void updateBasePaint(@NonNull Paint p) {
+        if (mHasBasePaint
+                && mTextSize == p.getTextSize()
+                && mTextScaleX == p.getTextScaleX()
+                && mTextSkewX == p.getTextSkewX()
+                && mPaintFlags == p.getFlags()
+                && mTypeface == p.getTypeface()) {
+            return;
+        }
+        mBasePaint.set(p);
+        mHasBasePaint = true;
+        mTextSize = p.getTextSize();
+        mTextScaleX = p.getTextScaleX();
+        mTextSkewX = p.getTextSkewX();
+        mPaintFlags = p.getFlags();
+        mTypeface = p.getTypeface();
+        // all paints were derived from the old base paint
+        invalidate();
+    }
+
+    /**
+     * Find next span transition and resolve paint for text between it and run start.
+     */
+    @NonNull
+    private Run resolveRun(@NonNull Spanned spanned, int runStart, int limit) {
+        final int runEnd = spanned.nextSpanTransition(runStart, limit, MetricAffectingSpan.class);
+        final MetricAffectingSpan[] spans = spanned.getSpans(runStart, runEnd, MetricAffectingSpan.class);
+        return new Run(runEnd, getPaint(spans));
+    }
+
+    /**
+     * Get paint for combination of spans.
+     */
+    @NonNull
+    private TextPaint getPaint(@NonNull MetricAffectingSpan[] spans) {
+        if (spans.length == 0) {
+            return mBasePaint;
+        }
+        for (int i = 0, size = mSpansPaints.size(); i < size; i++) {
+            final SpansPaint spansPaint = mSpansPaints.get(i);
+            if (Arrays.equals(spansPaint.mSpans, spans)) {
+                return spansPaint.mPaint;
+            }
+        }
+        final TextPaint textPaint = new TextPaint();
+        textPaint.set(mBasePaint);
+        for (MetricAffectingSpan span : spans) {
+            span.updateMeasureState(textPaint);
+        }
+        mSpansPaints.add(new SpansPaint(spans, textPaint));
+        return textPaint;
+    }
+
+    /**
+     * Range of text without span transitions.
+     */
+    private static final class Run {
+
+        private final int mEnd;
+        private final TextPaint mPaint;
+
+        Run(int end, @NonNull TextPaint paint) {
+            mEnd = end;
+            mPaint = paint;
+        }
+    }
+
+    /**
+     * Paint updated by combination of spans.
+     */
+    private static final class SpansPaint {
+
+        private final MetricAffectingSpan[] mSpans;
+        private final TextPaint mPaint;
+
+        SpansPaint(@NonNull MetricAffectingSpan[] spans, @NonNull TextPaint paint) {
+            mSpans = spans;
+            mPaint = paint;
+        }
+    }
+}
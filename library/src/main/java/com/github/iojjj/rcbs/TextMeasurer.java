@@ -0,0 +1,18 @@
+package com.github.iojjj.rcbs;
+
+/**
+ * Measurer of text used by {@link GeometryEngine}. Allows to calculate backgrounds without
+ * Android framework, for example in unit tests or benchmarks on a plain JVM.
+ */
+interface TextMeasurer {
+
+    /**
+     * Measure width of text in range.
+     *
+     * @param start start position in text
+     * @param end   end position in text
+     * @return width of text
+     * @throws IndexOutOfBoundsException if text can't be measured
+     */
+    float measure(int start, int end);
+}
@@ -0,0 +1,48 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Minimal benchmark harness that works both on JVM and on device. Operation is warmed up first,
+ * then measured in several samples, median of samples is reported.
+ */
+final class Benchmark {
+
+    private static final long WARM_UP_NANOS = 300_000_000L;
+    private static final long SAMPLE_NANOS = 100_000_000L;
+    private static final int SAMPLES_COUNT = 5;
+
+    private Benchmark() {
+        // no instances
+    }
+
+    /**
+     * Measure operation.
+     *
+     * @param operation  operation to measure
+     * @param opsPerRun  number of operations done by a single run, for example number of lines
+     * @return median time of a single operation in nanoseconds
+     */
+    static double measure(@NonNull Runnable operation, int opsPerRun) {
+        final long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        while (System.nanoTime() < warmUpEnd) {
+            operation.run();
+        }
+        final double[] samples = new double[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            final long start = System.nanoTime();
+            long elapsed;
+            int runs = 0;
+            do {
+                operation.run();
+                runs++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < SAMPLE_NANOS);
+            samples[i] = (double) elapsed / runs / opsPerRun;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES_COUNT / 2];
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results of benchmarks written as JSON array, one object per result:
+ * <pre>{"benchmark": "name", "nsPerOp": 123.4, "param": value, ...}</pre>
+ * Reports of different versions of library can be compared by name and parameters of results.
+ */
+final class BenchmarkReport {
+
+    private final String mName;
+    private final List<String> mResults = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param name name of report, used as file name
+     */
+    BenchmarkReport(@NonNull String name) {
+        mName = name;
+    }
+
+    /**
+     * Add result of benchmark.
+     *
+     * @param benchmark name of benchmark
+     * @param nsPerOp   time of a single operation in nanoseconds
+     * @param params    names and values of parameters
+     */
+    synchronized void add(@NonNull String benchmark, double nsPerOp, @NonNull Object... params) {
+        if (params.length % 2 != 0) {
+            throw new IllegalArgumentException("Parameters must be name-value pairs.");
+        }
+        final StringBuilder result = new StringBuilder("{\"benchmark\": \"").append(benchmark)
+                .append("\", \"nsPerOp\": ").append(String.format(Locale.US, "%.1f", nsPerOp));
+        for (int i = 0; i < params.length; i += 2) {
+            result.append(", \"").append(params[i]).append("\": ");
+            final Object value = params[i + 1];
+            if (value instanceof Number || value instanceof Boolean) {
+                result.append(value);
+            } else {
+                result.append('"').append(value).append('"');
+            }
+        }
+        result.append('}');
+        mResults.add(result.toString());
+    }
+
+    /**
+     * Write report to file named after report.
+     *
+     * @param directory directory of reports
+     * @return written file
+     * @throws IOException if report can't be written
+     */
+    @NonNull
+    synchronized File write(@NonNull File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        final File file = new File(directory, mName + ".json");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("[\n");
+            for (int i = 0, size = mResults.size(); i < size; i++) {
+                writer.write("  ");
+                writer.write(mResults.get(i));
+                writer.write(i == size - 1 ? "\n" : ",\n");
+            }
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
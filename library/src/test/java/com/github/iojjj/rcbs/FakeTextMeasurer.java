@@ -0,0 +1,28 @@
+package com.github.iojjj.rcbs;
+
+/**
+ * Measurer of monospaced text that counts measurements.
+ */
+final class FakeTextMeasurer implements TextMeasurer {
+
+    /**
+     * Width of every character.
+     */
+    static final float CHAR_WIDTH = 10;
+
+    private int mMeasureCount;
+
+    @Override
+    public float measure(int start, int end) {
+        mMeasureCount++;
+        return (end - start) * CHAR_WIDTH;
+    }
+
+    int getMeasureCount() {
+        return mMeasureCount;
+    }
+
+    void resetMeasureCount() {
+        mMeasureCount = 0;
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.iojjj.rcbs;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * JVM benchmarks of pure geometry classes. Skipped unless run with {@code -Prcbs.benchmark}, results
+ * are written to {@code build/benchmarks/GeometryBenchmark.json}.
+ */
+public class GeometryBenchmark {
+
+    private static final int[] PARTS_COUNTS = {100, 1000, 10000};
+    private static final int[] SEGMENTS_PER_LINE = {1, 4, 16, 64};
+    private static final int[] ALIGNMENTS = {GeometrySpec.ALIGN_START, GeometrySpec.ALIGN_CENTER,
+            GeometrySpec.ALIGN_END};
+    private static final String[] ALIGNMENT_NAMES = {"start", "center", "end"};
+    private static final float PADDING = 4;
+    private static final float SEPARATOR_WIDTH = 12;
+    private static final int LINE_HEIGHT = 20;
+
+    private static BenchmarkReport sReport;
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue("Benchmarks are disabled", Boolean.getBoolean("rcbs.benchmark"));
+        sReport = new BenchmarkReport(GeometryBenchmark.class.getSimpleName());
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        if (sReport != null) {
+            sReport.write(new File(System.getProperty("rcbs.benchmark.dir", "build/benchmarks")));
+        }
+    }
+
+    @Test
+    public void calculateLines() {
+        for (int partsCount : PARTS_COUNTS) {
+            for (int segmentsPerLine : SEGMENTS_PER_LINE) {
+                for (int rtl = 0; rtl <= 1; rtl++) {
+                    for (int alignment = 0; alignment < ALIGNMENTS.length; alignment++) {
+                        final TestText text = TestText.repeat(rtl == 1 ? TestText.RTL_PART : TestText.LTR_PART,
+                                partsCount);
+                        final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, ALIGNMENTS[alignment]);
+                        final LinesOperation operation = new LinesOperation(text, spec, segmentsPerLine, false);
+                        final double nsPerLine = Benchmark.measure(operation, operation.getLinesCount());
+                        sReport.add("GeometryEngine.calculate", nsPerLine,
+                                "parts", partsCount,
+                                "lines", operation.getLinesCount(),
+                                "segmentsPerLine", segmentsPerLine,
+                                "rtl", rtl == 1,
+                                "alignment", ALIGNMENT_NAMES[alignment],
+                                "measuresPerLine", operation.getMeasuresPerLine());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void layoutLines() {
+        for (int segmentsPerLine : SEGMENTS_PER_LINE) {
+            for (int rtl = 0; rtl <= 1; rtl++) {
+                for (int alignment = 0; alignment < ALIGNMENTS.length; alignment++) {
+                    final TestText text = TestText.repeat(rtl == 1 ? TestText.RTL_PART : TestText.LTR_PART,
+                            1000);
+                    final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, ALIGNMENTS[alignment]);
+                    final LinesOperation operation = new LinesOperation(text, spec, segmentsPerLine, true);
+                    final double nsPerLine = Benchmark.measure(operation, operation.getLinesCount());
+                    sReport.add("GeometryEngine.layout", nsPerLine,
+                            "parts", 1000,
+                            "lines", operation.getLinesCount(),
+                            "segmentsPerLine", segmentsPerLine,
+                            "rtl", rtl == 1,
+                            "alignment", ALIGNMENT_NAMES[alignment]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findBackgrounds() {
+        for (final int partsCount : PARTS_COUNTS) {
+            final TestText text = TestText.repeat(TestText.LTR_PART, partsCount);
+            final BackgroundHoldersIndex index = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START)
+                    .getBackgroundHolders();
+            final int length = text.getText().length();
+            final double nsPerOp = Benchmark.measure(new Runnable() {
+                @Override
+                public void run() {
+                    for (int position = 0; position < length; position += 7) {
+                        consume(index.findFirst(position));
+                    }
+                }
+            }, (length + 6) / 7);
+            sReport.add("BackgroundHoldersIndex.findFirst", nsPerOp, "parts", partsCount);
+        }
+    }
+
+    @Test
+    public void editBackgrounds() {
+        for (final int partsCount : PARTS_COUNTS) {
+            final TestText text = TestText.repeat(TestText.LTR_PART, partsCount);
+            final BackgroundHoldersIndex index = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START)
+                    .getBackgroundHolders();
+            // typing into a part in the middle: part grows, following parts are shifted
+            final int part = partsCount / 2;
+            final double nsPerOp = Benchmark.measure(new Runnable() {
+                @Override
+                public void run() {
+                    index.set(part, index.getStart(part), index.getEnd(part) + 1);
+                    index.shift(part + 1, 1);
+                    index.set(part, index.getStart(part), index.getEnd(part) - 1);
+                    index.shift(part + 1, -1);
+                }
+            }, 2);
+            sReport.add("BackgroundHoldersIndex.editPart", nsPerOp, "parts", partsCount);
+            final double insertNsPerOp = Benchmark.measure(new Runnable() {
+                @Override
+                public void run() {
+                    final int start = index.getStart(part);
+                    index.insert(part, 0, start, start);
+                    index.remove(part);
+                }
+            }, 2);
+            sReport.add("BackgroundHoldersIndex.insertRemove", insertNsPerOp, "parts", partsCount);
+        }
+    }
+
+    @Test
+    public void computeDirections() {
+        for (int partsCount : PARTS_COUNTS) {
+            for (int rtl = 0; rtl <= 1; rtl++) {
+                final String text = TestText.repeat(rtl == 1 ? TestText.RTL_PART : TestText.LTR_PART, partsCount)
+                        .getText();
+                final double nsPerOp = Benchmark.measure(new Runnable() {
+                    @Override
+                    public void run() {
+                        consume(DirectionRuns.compute(text).isLtr() ? 1 : 0);
+                    }
+                }, 1);
+                sReport.add("DirectionRuns.compute", nsPerOp, "parts", partsCount, "rtl", rtl == 1);
+            }
+        }
+    }
+
+    private static int sSink;
+
+    /**
+     * Keep result of operation, so it isn't eliminated by compiler.
+     */
+    private static void consume(int value) {
+        sSink += value;
+    }
+
+    /**
+     * Calculates or lays out again every line of text, each line contains the same number of parts.
+     */
+    private static final class LinesOperation implements Runnable {
+
+        private final GeometryEngine mEngine = new GeometryEngine();
+        private final FakeTextMeasurer mMeasurer = new FakeTextMeasurer();
+        private final TestText mText;
+        private final GeometrySpec mSpec;
+        private final int mSegmentsPerLine;
+        private final int mLinesCount;
+        private final int mLineWidth;
+        private final LineRects[] mRects;
+        private final boolean mLayoutOnly;
+        private final double mMeasuresPerLine;
+
+        LinesOperation(TestText text, GeometrySpec spec, int segmentsPerLine, boolean layoutOnly) {
+            mText = text;
+            mSpec = spec;
+            mSegmentsPerLine = segmentsPerLine;
+            mLinesCount = (text.getPartsCount() + segmentsPerLine - 1) / segmentsPerLine;
+            // leave space for alignment
+            mLineWidth = (int) ((text.getEnd(segmentsPerLine - 1) + 1) * FakeTextMeasurer.CHAR_WIDTH
+                    + segmentsPerLine * SEPARATOR_WIDTH) * 2;
+            mRects = new LineRects[mLinesCount];
+            mLayoutOnly = layoutOnly;
+            for (int i = 0; i < mLinesCount; i++) {
+                mRects[i] = new LineRects();
+                calculate(i);
+            }
+            mMeasuresPerLine = (double) mMeasurer.getMeasureCount() / mLinesCount;
+        }
+
+        int getLinesCount() {
+            return mLinesCount;
+        }
+
+        /**
+         * Get average number of text measurements per line. Grows linearly with number of segments
+         * per line.
+         */
+        double getMeasuresPerLine() {
+            return mMeasuresPerLine;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < mLinesCount; i++) {
+                if (mLayoutOnly) {
+                    mEngine.layout(mSpec, PADDING, 0, mLineWidth, mRects[i]);
+                } else {
+                    calculate(i);
+                }
+            }
+        }
+
+        private void calculate(int line) {
+            final int firstPart = line * mSegmentsPerLine;
+            final int lastPart = Math.min(firstPart + mSegmentsPerLine, mText.getPartsCount()) - 1;
+            final int top = line * LINE_HEIGHT;
+            mEngine.calculate(mSpec, mMeasurer, mText.getText(), mText.getLineStart(firstPart),
+                    mText.getLineEnd(lastPart), 0, mLineWidth, top, top + LINE_HEIGHT, mRects[line]);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.iojjj.rcbs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeometryEngineTest {
+
+    private static final float DELTA = 0.001f;
+    private static final float PADDING = 4;
+    private static final float SEPARATOR_WIDTH = 12;
+    private static final int TOP = 100;
+    private static final int BOTTOM = 120;
+
+    private final GeometryEngine mEngine = new GeometryEngine();
+    private final FakeTextMeasurer mMeasurer = new FakeTextMeasurer();
+
+    @Test
+    public void measuresOnlyPartsOnLine() {
+        final int partsPerLine = 4;
+        for (int partsCount = 100; partsCount <= 10000; partsCount *= 10) {
+            final TestText text = TestText.repeat(TestText.LTR_PART, partsCount);
+            final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START);
+            final LineRects rects = new LineRects();
+            final int linesCount = partsCount / partsPerLine;
+            mMeasurer.resetMeasureCount();
+            for (int line = 0; line < linesCount; line++) {
+                final int firstPart = line * partsPerLine;
+                mEngine.calculate(spec, mMeasurer, text.getText(), text.getLineStart(firstPart),
+                        text.getLineEnd(firstPart + partsPerLine - 1), 0, 1000, TOP, BOTTOM, rects);
+                assertEquals(partsPerLine, rects.size());
+            }
+            // cost of line depends on number of parts on line, not on total number of parts
+            assertEquals("parts " + partsCount, linesCount * partsPerLine, mMeasurer.getMeasureCount());
+        }
+    }
+
+    @Test
+    public void measuresEveryPartOnce() {
+        for (int partsPerLine = 1; partsPerLine <= 64; partsPerLine *= 2) {
+            final TestText text = TestText.repeat(TestText.LTR_PART, partsPerLine);
+            final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START);
+            final LineRects rects = new LineRects();
+            mMeasurer.resetMeasureCount();
+            mEngine.calculate(spec, mMeasurer, text.getText(), 0, text.getText().length(), 0, 10000, TOP, BOTTOM,
+                    rects);
+            // widths of previous parts are accumulated instead of being measured again
+            assertEquals("parts per line " + partsPerLine, partsPerLine, mMeasurer.getMeasureCount());
+            float left = 0;
+            for (int i = 0; i < partsPerLine; i++) {
+                assertEquals(left - PADDING, rects.getLeft(i), DELTA);
+                left += TestText.LTR_PART.length() * FakeTextMeasurer.CHAR_WIDTH + SEPARATOR_WIDTH;
+            }
+        }
+    }
+
+    @Test
+    public void matchesLegacyGeometryOfLtrLine() {
+        assertMatchesLegacy(TestText.of("one", "two", "three"), GeometrySpec.ALIGN_START, 0, 13, 0, 200);
+    }
+
+    @Test
+    public void matchesLegacyGeometryOfRtlLine() {
+        assertMatchesLegacy(TestText.of("אחת", "שתיים", "שלוש"), GeometrySpec.ALIGN_START, 0, 14, 0, 200);
+    }
+
+    @Test
+    public void matchesLegacyGeometryOfAlignedLines() {
+        final TestText ltr = TestText.of("one", "two", "three");
+        final TestText rtl = TestText.of("אחת", "שתיים", "שלוש");
+        for (int alignment : new int[]{GeometrySpec.ALIGN_CENTER, GeometrySpec.ALIGN_END}) {
+            assertMatchesLegacy(ltr, alignment, 0, 13, 20, 300);
+            assertMatchesLegacy(rtl, alignment, 0, 14, 20, 300);
+            // text wider than line
+            assertMatchesLegacy(ltr, alignment, 0, 13, 20, 60);
+            assertMatchesLegacy(rtl, alignment, 0, 14, 20, 60);
+        }
+    }
+
+    @Test
+    public void matchesLegacyGeometryOfTrimmedLines() {
+        final TestText text = TestText.of("  one ", "two", " ", "three  ");
+        // line starts and ends with spaces of parts
+        assertMatchesLegacy(text, GeometrySpec.ALIGN_START, 0, text.getText().length(), 0, 300);
+        assertMatchesLegacy(text, GeometrySpec.ALIGN_END, 0, text.getText().length(), 0, 300);
+        // line that contains only spaces
+        assertMatchesLegacy(text, GeometrySpec.ALIGN_START, 0, 2, 0, 300);
+        // line that starts at separator and wraps a part
+        assertMatchesLegacy(text, GeometrySpec.ALIGN_CENTER, 6, 15, 0, 300);
+    }
+
+    @Test
+    public void shiftsLineThatStartsWithSeparator() {
+        final TestText ltr = TestText.of("one", "two", "three");
+        final TestText rtl = TestText.of("אחת", "שתיים", "שלוש");
+        final int[] alignments = {GeometrySpec.ALIGN_START, GeometrySpec.ALIGN_CENTER, GeometrySpec.ALIGN_END};
+        // layout keeps width of separator that a wrapped line starts with and aligns it with text
+        final float[] shifts = {SEPARATOR_WIDTH, SEPARATOR_WIDTH / 2, 0};
+        for (int i = 0; i < alignments.length; i++) {
+            for (TestText text : new TestText[]{ltr, rtl}) {
+                final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, alignments[i]);
+                final int end = text.getText().length();
+                final LineRects wrapped = new LineRects();
+                mEngine.calculate(spec, mMeasurer, text.getText(), text.getEnd(0), end, 0, 300, TOP, BOTTOM, wrapped);
+                final LineRects rects = new LineRects();
+                mEngine.calculate(spec, mMeasurer, text.getText(), text.getStart(1), end, 0, 300, TOP, BOTTOM, rects);
+                final float shift = text == rtl ? -shifts[i] : shifts[i];
+                assertEquals(rects.size(), wrapped.size());
+                for (int j = 0; j < rects.size(); j++) {
+                    assertEquals(rects.getLeft(j) + shift, wrapped.getLeft(j), DELTA);
+                    assertEquals(rects.getRight(j) + shift, wrapped.getRight(j), DELTA);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shiftsWrappedLinesOfLongText() {
+        final TestText text = TestText.repeat(TestText.LTR_PART, 20000);
+        final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START);
+        final LineRects rects = new LineRects();
+        // positions of separators don't fit into 16 bits
+        for (int part = 16000; part < 16010; part++) {
+            final int separator = text.getEnd(part);
+            assertFalse(GeometryEngine.isSeparatorOnLineEdge(text.getText(), separator, separator + 1));
+            // result doesn't depend on how many times line has been calculated
+            for (int i = 0; i < 2; i++) {
+                mEngine.calculate(spec, mMeasurer, text.getText(), separator, text.getLineEnd(part + 2), 0, 1000,
+                        TOP, BOTTOM, rects);
+                assertEquals(2, rects.size());
+                assertEquals(SEPARATOR_WIDTH - PADDING, rects.getLeft(0), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void doesNotShiftLineThatStartsWithSeparatorAfterLineBreak() {
+        final TestText text = TestText.of("one\n", "two");
+        final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, GeometrySpec.ALIGN_START);
+        final int separator = text.getEnd(0);
+        assertTrue(GeometryEngine.isSeparatorOnLineEdge(text.getText(), separator, separator + 1));
+        final LineRects rects = new LineRects();
+        mEngine.calculate(spec, mMeasurer, text.getText(), separator, text.getText().length(), 0, 1000, TOP,
+                BOTTOM, rects);
+        assertEquals(1, rects.size());
+        assertEquals(-PADDING, rects.getLeft(0), DELTA);
+    }
+
+    @Test
+    public void matchesLegacyGeometryOfRandomLines() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final boolean rtl = random.nextBoolean();
+            final String[] parts = new String[1 + random.nextInt(8)];
+            for (int j = 0; j < parts.length; j++) {
+                parts[j] = randomPart(random, rtl);
+            }
+            final TestText text = TestText.of(parts);
+            final int length = text.getText().length();
+            final int start = random.nextInt(length + 1);
+            final int end = start + random.nextInt(length - start + 1);
+            final int left = random.nextInt(50);
+            final int right = left + random.nextInt(400);
+            assertMatchesLegacy(text, random.nextInt(3), start, end, left, right);
+        }
+    }
+
+    private void assertMatchesLegacy(TestText text, int alignment, int start, int end, int left, int right) {
+        final GeometrySpec spec = text.newSpec(PADDING, SEPARATOR_WIDTH, alignment);
+        final LineRects rects = new LineRects();
+        mEngine.calculate(spec, mMeasurer, text.getText(), start, end, left, right, TOP, BOTTOM, rects);
+        final List<float[]> expected = LegacyGeometry.calculate(text, spec.isRtl(start), alignment, start, end,
+                left, right);
+        // legacy geometry didn't take separators that wrapped line starts with into account
+        final float leadingShift = getLeadingShift(text, alignment, start);
+        final float shift = spec.isRtl(start) ? -leadingShift : leadingShift;
+        final String message = "\"" + text.getText() + "\" [" + start + ", " + end + ") alignment " + alignment;
+        assertEquals(message, expected.size(), rects.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final float[] rect = expected.get(i);
+            assertEquals(message, (int) rect[0], rects.getColor(i));
+            assertEquals(message, rect[1] + shift, rects.getLeft(i), DELTA);
+            assertEquals(message, rect[2], rects.getTop(i), DELTA);
+            assertEquals(message, rect[3] + shift, rects.getRight(i), DELTA);
+            assertEquals(message, rect[4], rects.getBottom(i), DELTA);
+        }
+    }
+
+    /**
+     * Get shift of backgrounds on line that starts with separators between parts.
+     */
+    private static float getLeadingShift(TestText text, int alignment, int start) {
+        float width = 0;
+        for (int position = start; position > 0 && position < text.getText().length()
+                && !isInsidePart(text, position); position++) {
+            width += SEPARATOR_WIDTH;
+        }
+        if (alignment == GeometrySpec.ALIGN_CENTER) {
+            return width / 2;
+        }
+        return alignment == GeometrySpec.ALIGN_END ? 0 : width;
+    }
+
+    private static boolean isInsidePart(TestText text, int position) {
+        for (int i = 0; i < text.getPartsCount(); i++) {
+            if (text.getStart(i) <= position && position < text.getEnd(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String randomPart(Random random, boolean rtl) {
+        final char[] chars = new char[1 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; i++) {
+            final int kind = random.nextInt(5);
+            if (kind == 0) {
+                chars[i] = ' ';
+            } else {
+                chars[i] = rtl ? (char) ('א' + random.nextInt(27)) : (char) ('a' + random.nextInt(26));
+            }
+        }
+        // direction is detected by first strong character of paragraph
+        chars[chars.length - 1] = rtl ? 'ת' : 'z';
+        return new String(chars);
+    }
+
+    /**
+     * Port of geometry calculation of {@code drawBackground} before it was extracted into
+     * {@link GeometryEngine}: {@code updateHoldersOnLine}, {@code getPrevTextWidth} and
+     * {@code calculateAlignmentFix}. Previous parts of line are measured again for every part.
+     */
+    private static final class LegacyGeometry {
+
+        /**
+         * Calculate rectangles of backgrounds on line.
+         *
+         * @return rectangles as [color, left, top, right, bottom] arrays
+         */
+        static List<float[]> calculate(TestText text, boolean rtl, int alignment, int start, int end,
+                                       int left, int right) {
+            final String string = text.getText();
+            final List<float[]> holders = new ArrayList<>();
+            final List<int[]> ranges = new ArrayList<>();
+            for (int i = 0; i < text.getPartsCount(); i++) {
+                final int holderStart = text.getStart(i);
+                final int holderEnd = text.getEnd(i);
+                if (start > holderEnd || end < holderStart) {
+                    continue;
+                }
+                final String part = string.substring(start, end);
+                if (part.trim().isEmpty()) {
+                    continue;
+                }
+                // do not add background to lines that ends with spaces
+                int trimmedStart = 0;
+                while (part.charAt(trimmedStart) <= ' ') {
+                    trimmedStart++;
+                }
+                int trimmedEnd = 0;
+                while (part.charAt(part.length() - 1 - trimmedEnd) <= ' ') {
+                    trimmedEnd++;
+                }
+                start += trimmedStart;
+                end -= trimmedEnd;
+                final int startInText = start < holderStart ? holderStart : start;
+                final int endInText = end > holderEnd ? holderEnd : end;
+                if (startInText == endInText) {
+                    continue;
+                }
+                if (startInText > endInText) {
+                    // measuring throws IndexOutOfBoundsException, part is skipped
+                    continue;
+                }
+                float prevTextWidth = 0;
+                if (!ranges.isEmpty()) {
+                    for (int[] range : ranges) {
+                        prevTextWidth += measure(range[0], range[1]);
+                    }
+                    prevTextWidth += ranges.size() * SEPARATOR_WIDTH;
+                }
+                final float curTextWidth = measure(startInText, endInText);
+                float l = left;
+                float r = right;
+                if (rtl) {
+                    r -= prevTextWidth;
+                    l = r - curTextWidth;
+                } else {
+                    l += prevTextWidth;
+                    r = l + curTextWidth;
+                }
+                ranges.add(new int[]{startInText, endInText});
+                holders.add(new float[]{text.getColor(i), l - PADDING, TOP - PADDING, r + PADDING,
+                        BOTTOM + PADDING});
+            }
+            final float alignmentFix = calculateAlignmentFix(holders, rtl, alignment, left, right);
+            for (float[] holder : holders) {
+                holder[1] += rtl ? -alignmentFix : alignmentFix;
+                holder[3] += rtl ? -alignmentFix : alignmentFix;
+            }
+            return holders;
+        }
+
+        private static float calculateAlignmentFix(List<float[]> holders, boolean rtl, int alignment,
+                                                   int left, int right) {
+            if (holders.isEmpty()) {
+                return 0;
+            }
+            float fLeft = left;
+            float fRight = right;
+            final float mostLeft;
+            final float mostRight;
+            if (rtl) {
+                mostLeft = holders.get(holders.size() - 1)[1];
+                mostRight = holders.get(0)[3];
+            } else {
+                mostLeft = holders.get(0)[1];
+                mostRight = holders.get(holders.size() - 1)[3];
+            }
+            if (mostLeft < left) {
+                fLeft = mostLeft;
+            }
+            if (mostRight > fRight) {
+                fRight = mostRight;
+            }
+            final float width = fRight - fLeft;
+            final float consumedWidth = mostRight - mostLeft;
+            if (alignment == GeometrySpec.ALIGN_CENTER) {
+                return (width - consumedWidth + PADDING) / 2;
+            } else if (alignment == GeometrySpec.ALIGN_END) {
+                return width - consumedWidth + PADDING;
+            }
+            return 0;
+        }
+
+        private static float measure(int start, int end) {
+            return (end - start) * FakeTextMeasurer.CHAR_WIDTH;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.iojjj.rcbs;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Text of parts joined the same way as {@link RoundedCornersBackgroundSpan.Builder} joins them,
+ * with a single separator character between parts.
+ */
+final class TestText {
+
+    /**
+     * Part of LTR text.
+     */
+    static final String LTR_PART = "tag";
+
+    /**
+     * Part of RTL text.
+     */
+    static final String RTL_PART = "תגית";
+
+    private final String mText;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final int[] mColors;
+
+    private TestText(@NonNull String text, @NonNull int[] starts, @NonNull int[] ends) {
+        mText = text;
+        mStarts = starts;
+        mEnds = ends;
+        mColors = new int[starts.length];
+        for (int i = 0; i < mColors.length; i++) {
+            mColors[i] = 0xFF000000 | i + 1;
+        }
+    }
+
+    /**
+     * Create text of specified parts.
+     */
+    @NonNull
+    static TestText of(@NonNull String... parts) {
+        final StringBuilder text = new StringBuilder();
+        final int[] starts = new int[parts.length];
+        final int[] ends = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                text.append(RoundedCornersBackgroundSpan.SEPARATOR);
+            }
+            starts[i] = text.length();
+            text.append(parts[i]);
+            ends[i] = text.length();
+        }
+        return new TestText(text.toString(), starts, ends);
+    }
+
+    /**
+     * Create text of the same part repeated specified number of times.
+     */
+    @NonNull
+    static TestText repeat(@NonNull String part, int count) {
+        final String[] parts = new String[count];
+        Arrays.fill(parts, part);
+        return of(parts);
+    }
+
+    /**
+     * Create parameters of backgrounds of text.
+     */
+    @NonNull
+    GeometrySpec newSpec(float padding, float separatorWidth, int textAlignment) {
+        // index takes ownership of arrays
+        final BackgroundHoldersIndex index = new BackgroundHoldersIndex(Arrays.copyOf(mColors, mColors.length),
+                Arrays.copyOf(mStarts, mStarts.length), Arrays.copyOf(mEnds, mEnds.length));
+        return new GeometrySpec(index, padding, separatorWidth, textAlignment, DirectionRuns.compute(mText));
+    }
+
+    @NonNull
+    String getText() {
+        return mText;
+    }
+
+    int getPartsCount() {
+        return mStarts.length;
+    }
+
+    int getStart(int part) {
+        return mStarts[part];
+    }
+
+    int getEnd(int part) {
+        return mEnds[part];
+    }
+
+    int getColor(int part) {
+        return mColors[part];
+    }
+
+    /**
+     * Get start of line that begins with specified part.
+     */
+    int getLineStart(int firstPart) {
+        return mStarts[firstPart];
+    }
+
+    /**
+     * Get end of line that ends with specified part. Line includes trailing separator, like lines
+     * of layouts do.
+     */
+    int getLineEnd(int lastPart) {
+        return lastPart == mEnds.length - 1 ? mEnds[lastPart] : mEnds[lastPart] + 1;
+    }
+}